@@ -0,0 +1,144 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Fuentes sintéticas para los benchmarks: código corriente con algunas líneas que
+ * disparan reglas (SQL concatenado, System.out, TODO, secretos, números mágicos), en
+ * la proporción de un repositorio real, para que se midan tanto el prefiltro como las regex.
+ */
+final class BenchmarkSources {
+    private static final String JAVA_CLASS =
+        "package com.example.orders;\n"
+        + "\n"
+        + "import java.sql.Connection;\n"
+        + "import java.sql.ResultSet;\n"
+        + "import java.util.ArrayList;\n"
+        + "import java.util.List;\n"
+        + "\n"
+        + "/**\n"
+        + " * Repositorio de pedidos %d\n"
+        + " */\n"
+        + "public class OrderRepository%d {\n"
+        + "    private static final String TABLE = \"orders\";\n"
+        + "    private String password = \"s3cr3t-%d\";\n"
+        + "    private final Connection connection;\n"
+        + "\n"
+        + "    public OrderRepository%d(Connection connection) {\n"
+        + "        this.connection = connection;\n"
+        + "    }\n"
+        + "\n"
+        + "    public List<String> findByCustomer(String customerId) throws Exception {\n"
+        + "        // TODO: paginar los resultados\n"
+        + "        String query = \"SELECT * FROM \" + TABLE + \" WHERE customer = '\" + customerId + \"'\";\n"
+        + "        List<String> ids = new ArrayList<>();\n"
+        + "        try (ResultSet rs = connection.createStatement().executeQuery(query)) {\n"
+        + "            while (rs.next()) {\n"
+        + "                ids.add(rs.getString(\"id\"));\n"
+        + "            }\n"
+        + "        }\n"
+        + "        System.out.println(\"Encontrados: \" + ids.size());\n"
+        + "        return ids;\n"
+        + "    }\n"
+        + "\n"
+        + "    public double applyDiscount(double total, int items) {\n"
+        + "        if (items > 10 && total > 500) {\n"
+        + "            return total * 0.85;\n"
+        + "        } else if (items > 3) {\n"
+        + "            return total * 0.95;\n"
+        + "        }\n"
+        + "        return total;\n"
+        + "    }\n"
+        + "\n"
+        + "    public String describe(String status) {\n"
+        + "        switch (status) {\n"
+        + "            case \"NEW\": return \"Pedido nuevo\";\n"
+        + "            case \"SHIPPED\": return \"Pedido enviado\";\n"
+        + "            default: return \"Estado desconocido: \" + status;\n"
+        + "        }\n"
+        + "    }\n"
+        + "}\n";
+
+    private static final String JS_MODULE =
+        "'use strict';\n"
+        + "\n"
+        + "const API_URL = 'http://api.example.com/v%d';\n"
+        + "const apiKey = 'key-%d-0123456789';\n"
+        + "\n"
+        + "/**\n"
+        + " * Carga los pedidos del cliente\n"
+        + " */\n"
+        + "async function loadOrders(customerId) {\n"
+        + "  // FIXME: reintentar ante errores de red\n"
+        + "  const response = await fetch(API_URL + '/orders?customer=' + customerId);\n"
+        + "  const orders = await response.json();\n"
+        + "  console.log('Pedidos cargados', orders.length);\n"
+        + "  return orders.filter(order => order.total > 100);\n"
+        + "}\n"
+        + "\n"
+        + "function render(container, orders) {\n"
+        + "  container.innerHTML = orders.map(order => '<li>' + order.id + '</li>').join('');\n"
+        + "  for (let i = 0; i < orders.length; i++) {\n"
+        + "    if (orders[i].status === 'NEW') {\n"
+        + "      container.children[i].classList.add('highlight');\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n"
+        + "\n"
+        + "module.exports = { loadOrders%d: loadOrders, render };\n";
+
+    private BenchmarkSources() {
+    }
+
+    /**
+     * Contenido de al menos size bytes para la extensión dada (java o js)
+     */
+    static byte[] content(String extension, int size) {
+        String template = "js".equals(extension) ? JS_MODULE : JAVA_CLASS;
+        StringBuilder source = new StringBuilder(size + template.length());
+        for (int i = 0; source.length() < size; i++) {
+            source.append(template.replace("%d", String.valueOf(i)));
+        }
+        return source.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escribe un archivo temporal con content(extension, size)
+     */
+    static Path file(String extension, int size) throws IOException {
+        Path file = Files.createTempFile("mcp-bench-", "." + extension);
+        Files.write(file, content(extension, size));
+        return file;
+    }
+
+    /**
+     * Árbol de directories subdirectorios en dos niveles, cada uno con filesPerDirectory
+     * fuentes pequeñas y un archivo que los analizadores descartan
+     */
+    static Path tree(int directories, int filesPerDirectory) throws IOException {
+        Path root = Files.createTempDirectory("mcp-bench-tree-");
+        byte[] source = content("java", 2048);
+        for (int d = 0; d < directories; d++) {
+            Path dir = Files.createDirectories(root.resolve("module" + (d % 8)).resolve("pkg" + d));
+            for (int f = 0; f < filesPerDirectory; f++) {
+                Files.write(dir.resolve("Source" + f + ".java"), source);
+            }
+            Files.write(dir.resolve("README.md"), new byte[] {'#'});
+        }
+        return root;
+    }
+
+    static void delete(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
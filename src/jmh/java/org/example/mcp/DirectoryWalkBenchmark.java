@@ -0,0 +1,84 @@
+package org.example.mcp;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Descubrimiento de archivos con ScanScheduler.walk, el mismo recorrido de scan_repo y
+ * analyze_policies, con el filtro de extensión y tamaño pero sin leer contenido
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectoryWalkBenchmark {
+    private static final int FILES_PER_DIRECTORY = 20;
+
+    @Param({"10", "200"})
+    public int directories;
+
+    private Path root;
+
+    /**
+     * Archivos entregados por segundo, en la columna "files"
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Walked {
+        public long files;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            files = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        root = BenchmarkSources.tree(directories, FILES_PER_DIRECTORY);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSources.delete(root);
+    }
+
+    @Benchmark
+    public void walk(Walked walked) throws IOException {
+        // El presupuesto de bytes es acumulativo: un planificador por recorrido, como cada petición
+        ScanScheduler scheduler = ScanScheduler.fromConfig();
+        long maxFileSize = Config.getMaxFileSize();
+        scheduler.walk(root, Config.getMaxDepth(), file -> isCandidate(file, maxFileSize), file -> walked.files++);
+    }
+
+    private static boolean isCandidate(Path file, long maxFileSize) {
+        String name = file.toString().toLowerCase();
+        if (!name.endsWith(".java") && !name.endsWith(".js") && !name.endsWith(".ts")) {
+            return false;
+        }
+        try {
+            return Files.isReadable(file) && Files.size(file) <= maxFileSize;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
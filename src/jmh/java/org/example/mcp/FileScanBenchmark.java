@@ -0,0 +1,89 @@
+package org.example.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escaneo completo de un archivo por cada analizador: mapeo, tokenizado, matching y
+ * registro de hallazgos. Sin SourceTokens.openScope(), así que cada operación tokeniza
+ * el archivo como la primera herramienta de una petición
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileScanBenchmark {
+    @Param({"4096", "65536", "1048576"})
+    public int size;
+
+    @Param({"java", "js"})
+    public String language;
+
+    private SecurityAnalyzer securityAnalyzer;
+    private PolicyAnalyzer policyAnalyzer;
+    private ChecklistAuditor checklistAuditor;
+    private Charset charset;
+    private Path file;
+    private long bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        securityAnalyzer = new SecurityAnalyzer();
+        policyAnalyzer = new PolicyAnalyzer();
+        checklistAuditor = new ChecklistAuditor();
+        charset = Charset.forName(Config.getFileEncoding());
+        file = BenchmarkSources.file(language, size);
+        bytes = Files.size(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSources.delete(file);
+    }
+
+    @Benchmark
+    public FindingStore securityScan(Throughput throughput) throws IOException {
+        FindingStore issues = new FindingStore();
+        MappedLines lines = MappedLines.map(file, charset);
+        try {
+            securityAnalyzer.scanContent(file, lines, issues, CancellationToken.NONE);
+        } finally {
+            lines.release();
+        }
+        throughput.add(bytes);
+        return issues;
+    }
+
+    @Benchmark
+    public FindingStore policyScan(Throughput throughput) {
+        FindingStore violations = new FindingStore();
+        policyAnalyzer.analyzeFile(file, violations);
+        throughput.add(bytes);
+        return violations;
+    }
+
+    @Benchmark
+    public FindingStore checklistScan(Throughput throughput) {
+        FindingStore issues = new FindingStore();
+        throughput.add(checklistAuditor.scanFileForChecklist(file, issues, CancellationToken.NONE));
+        return issues;
+    }
+}
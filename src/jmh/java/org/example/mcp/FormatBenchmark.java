@@ -0,0 +1,88 @@
+package org.example.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formateo del listado completo de hallazgos. Las filas vienen de escanear un archivo
+ * real, así que el código de cada una se relee del disco como en una respuesta normal;
+ * el throughput se mide sobre el tamaño en UTF-8 del texto generado
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+    @Param({"100", "10000"})
+    public int findings;
+
+    private SecurityAnalyzer securityAnalyzer;
+    private PolicyAnalyzer policyAnalyzer;
+    private Path file;
+    private FindingStore issues;
+    private FindingStore violations;
+    private long securityBytes;
+    private long policyBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        securityAnalyzer = new SecurityAnalyzer();
+        policyAnalyzer = new PolicyAnalyzer();
+        Charset charset = Charset.forName(Config.getFileEncoding());
+        // Se duplica el archivo hasta que ambos analizadores tengan suficientes hallazgos
+        for (int size = findings * 256; ; size *= 2) {
+            BenchmarkSources.delete(file);
+            file = BenchmarkSources.file("java", size);
+            issues = new FindingStore();
+            MappedLines lines = MappedLines.map(file, charset);
+            securityAnalyzer.scanContent(file, lines, issues, CancellationToken.NONE);
+            lines.release();
+            violations = new FindingStore();
+            policyAnalyzer.analyzeFile(file, violations);
+            if (issues.size() >= findings && violations.size() >= findings) {
+                break;
+            }
+        }
+        issues.retain(row -> row < findings);
+        violations.retain(row -> row < findings);
+        securityBytes = securityAnalyzer.formatResults(issues, file.toString()).getBytes(StandardCharsets.UTF_8).length;
+        policyBytes = policyAnalyzer.formatPolicyResults(violations, file.toString()).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSources.delete(file);
+    }
+
+    @Benchmark
+    public String formatResults(Throughput throughput) {
+        String report = securityAnalyzer.formatResults(issues, file.toString());
+        throughput.add(securityBytes);
+        return report;
+    }
+
+    @Benchmark
+    public String formatPolicyResults(Throughput throughput) {
+        String report = policyAnalyzer.formatPolicyResults(violations, file.toString());
+        throughput.add(policyBytes);
+        return report;
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching línea a línea con los conjuntos de reglas ya compilados: prefiltro de
+ * literales más regex de las candidatas, sin lectura de archivos ni registro de hallazgos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleMatchingBenchmark {
+    private static final int CORPUS_SIZE = 64 * 1024;
+
+    @Param({"java", "js"})
+    public String language;
+
+    private RuleEngine.CompiledRuleSet<?> securityRules;
+    private RuleEngine.CompiledRuleSet<?> policyRules;
+    private String[] lines;
+    private long bytes;
+
+    @Setup
+    public void setUp() {
+        securityRules = new SecurityAnalyzer().rulesFor(language);
+        policyRules = new PolicyAnalyzer().rulesFor(language);
+        byte[] content = BenchmarkSources.content(language, CORPUS_SIZE);
+        lines = new String(content, StandardCharsets.UTF_8).split("\n");
+        bytes = content.length;
+    }
+
+    @Benchmark
+    public void securityRules(Throughput throughput, Blackhole blackhole) {
+        matchAll(securityRules, blackhole);
+        throughput.add(bytes);
+    }
+
+    @Benchmark
+    public void policyRules(Throughput throughput, Blackhole blackhole) {
+        matchAll(policyRules, blackhole);
+        throughput.add(bytes);
+    }
+
+    private void matchAll(RuleEngine.CompiledRuleSet<?> rules, Blackhole blackhole) {
+        for (String line : lines) {
+            long[] candidates = rules.candidates(line);
+            if (candidates != null) {
+                blackhole.consume(rules.match(line, candidates));
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AISecurityAnalyzer {
     private final SecurityAnalyzer baseAnalyzer;
@@ -15,12 +16,22 @@ public class AISecurityAnalyzer {
     }
     
     public String analyzeRepository(String repoPath) {
+        return analyzeRepository(repoPath, CancellationToken.NONE);
+    }
+    
+    /**
+     * Igual que analyzeRepository(String), pero el escaneo y los recorridos de contexto
+     * se detienen al cancelar la llamada
+     */
+    String analyzeRepository(String repoPath, CancellationToken cancellation) {
         try {
             // 1. Análisis básico con reglas
-            String basicResults = baseAnalyzer.scanRepository(repoPath);
+            String basicResults = baseAnalyzer.scanRepository(repoPath, null, false,
+                ScanScheduler.fromConfig(), ScanProgress.NONE, cancellation);
+            cancellation.throwIfCancelled();
             
             // 2. Análisis contextual con IA
-            ProjectContext context = extractProjectContext(repoPath);
+            ProjectContext context = extractProjectContext(repoPath, cancellation);
             
             // 3. Generar reporte inteligente
             return aiEngine.generateIntelligentReport(basicResults, context);
@@ -30,15 +41,15 @@ public class AISecurityAnalyzer {
         }
     }
     
-    private ProjectContext extractProjectContext(String repoPath) throws IOException {
+    private ProjectContext extractProjectContext(String repoPath, CancellationToken cancellation) throws IOException {
         Path path = Paths.get(repoPath);
         ProjectContext context = new ProjectContext();
         
         // Detectar tipo de proyecto
         context.projectType = detectProjectType(path);
-        context.fileCount = countFiles(path);
-        context.technologies = detectTechnologies(path);
-        context.riskLevel = calculateRiskLevel(path);
+        context.fileCount = countFiles(path, cancellation);
+        context.technologies = detectTechnologies(path, cancellation);
+        context.riskLevel = calculateRiskLevel(path, cancellation);
         
         return context;
     }
@@ -51,45 +62,60 @@ public class AISecurityAnalyzer {
         return "Desconocido";
     }
     
-    private int countFiles(Path path) throws IOException {
-        return (int) Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> !p.toString().contains(".git"))
-            .count();
+    private int countFiles(Path path, CancellationToken cancellation) throws IOException {
+        try (Stream<Path> files = walk(path, cancellation)) {
+            return (int) files
+                .filter(Files::isRegularFile)
+                .filter(p -> !p.toString().contains(".git"))
+                .count();
+        }
     }
     
-    private List<String> detectTechnologies(Path path) throws IOException {
+    private List<String> detectTechnologies(Path path, CancellationToken cancellation) throws IOException {
         Set<String> techs = new HashSet<>();
         
-        Files.walk(path)
-            .filter(Files::isRegularFile)
-            .forEach(file -> {
-                String name = file.toString().toLowerCase();
-                if (name.endsWith(".java")) techs.add("Java");
-                if (name.endsWith(".js") || name.endsWith(".ts")) techs.add("JavaScript/TypeScript");
-                if (name.endsWith(".py")) techs.add("Python");
-                if (name.endsWith(".sql")) techs.add("SQL");
-                if (name.contains("docker")) techs.add("Docker");
-            });
+        try (Stream<Path> files = walk(path, cancellation)) {
+            files
+                .filter(Files::isRegularFile)
+                .forEach(file -> {
+                    String name = file.toString().toLowerCase();
+                    if (name.endsWith(".java")) techs.add("Java");
+                    if (name.endsWith(".js") || name.endsWith(".ts")) techs.add("JavaScript/TypeScript");
+                    if (name.endsWith(".py")) techs.add("Python");
+                    if (name.endsWith(".sql")) techs.add("SQL");
+                    if (name.contains("docker")) techs.add("Docker");
+                });
+        }
             
         return new ArrayList<>(techs);
     }
     
-    private String calculateRiskLevel(Path path) throws IOException {
-        long criticalFiles = Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> {
-                String name = p.toString().toLowerCase();
-                return name.contains("password") || name.contains("secret") || 
-                       name.contains("config") || name.contains("auth");
-            })
-            .count();
+    private String calculateRiskLevel(Path path, CancellationToken cancellation) throws IOException {
+        long criticalFiles;
+        try (Stream<Path> files = walk(path, cancellation)) {
+            criticalFiles = files
+                .filter(Files::isRegularFile)
+                .filter(p -> {
+                    String name = p.toString().toLowerCase();
+                    return name.contains("password") || name.contains("secret") || 
+                           name.contains("config") || name.contains("auth");
+                })
+                .count();
+        }
             
         if (criticalFiles > 10) return "ALTO";
         if (criticalFiles > 5) return "MEDIO";
         return "BAJO";
     }
     
+    /**
+     * Recorrido del proyecto que se corta en cuanto se cancela la llamada; hay que cerrarlo
+     * para liberar los directorios abiertos
+     */
+    private Stream<Path> walk(Path path, CancellationToken cancellation) throws IOException {
+        return Files.walk(path).peek(p -> cancellation.throwIfCancelled());
+    }
+    
     static class ProjectContext {
         String projectType;
         int fileCount;
@@ -0,0 +1,177 @@
+package org.example.mcp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Autómata Aho-Corasick sobre un conjunto de literales. Cada literal lleva asociado
+ * un identificador (p.ej. el índice de la regla); un recorrido lineal del texto
+ * marca en una máscara de bits todos los identificadores cuyos literales aparecen.
+ * Es inmutable una vez construido.
+ */
+final class AhoCorasick {
+    private final int[] lowClass;                    // clase de símbolo para 0..255
+    private final Map<Integer, Integer> highClass;   // clase para símbolos >= 256
+    private final int alphabetSize;
+    private final int[] delta;                       // estado * alphabetSize + clase
+    private final long[][] outputs;                  // identificadores por estado, o null
+
+    /**
+     * @param keywords literales como secuencias de símbolos (chars o bytes sin signo)
+     * @param ids      identificador de cada literal, en [0, idCount)
+     */
+    AhoCorasick(List<int[]> keywords, int[] ids, int idCount) {
+        int words = Math.max(1, (idCount + 63) >>> 6);
+
+        // Alfabeto comprimido: la clase 0 agrupa todos los símbolos que no aparecen en ningún literal
+        this.lowClass = new int[256];
+        this.highClass = new HashMap<>();
+        int classes = 1;
+        for (int[] keyword : keywords) {
+            for (int symbol : keyword) {
+                if (symbol < 256) {
+                    if (lowClass[symbol] == 0) {
+                        lowClass[symbol] = classes++;
+                    }
+                } else if (!highClass.containsKey(symbol)) {
+                    highClass.put(symbol, classes++);
+                }
+            }
+        }
+        this.alphabetSize = classes;
+
+        // Trie
+        List<int[]> gotoTable = new ArrayList<>();
+        List<long[]> out = new ArrayList<>();
+        gotoTable.add(newRow());
+        out.add(null);
+        for (int k = 0; k < keywords.size(); k++) {
+            int state = 0;
+            for (int symbol : keywords.get(k)) {
+                int cls = classOf(symbol);
+                int next = gotoTable.get(state)[cls];
+                if (next <= 0) {
+                    next = gotoTable.size();
+                    gotoTable.get(state)[cls] = next;
+                    gotoTable.add(newRow());
+                    out.add(null);
+                }
+                state = next;
+            }
+            long[] mask = out.get(state);
+            if (mask == null) {
+                mask = new long[words];
+                out.set(state, mask);
+            }
+            mask[ids[k] >>> 6] |= 1L << ids[k];
+        }
+
+        // Enlaces de fallo en anchura, convirtiendo el trie en un DFA completo
+        int states = gotoTable.size();
+        int[] fail = new int[states];
+        this.delta = new int[states * alphabetSize];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoTable.get(0);
+        for (int cls = 0; cls < alphabetSize; cls++) {
+            int next = root[cls] > 0 ? root[cls] : 0;
+            delta[cls] = next;
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            long[] inherited = out.get(fail[state]);
+            if (inherited != null) {
+                long[] mask = out.get(state);
+                if (mask == null) {
+                    out.set(state, inherited.clone());
+                } else {
+                    for (int w = 0; w < words; w++) {
+                        mask[w] |= inherited[w];
+                    }
+                }
+            }
+            int[] row = gotoTable.get(state);
+            for (int cls = 0; cls < alphabetSize; cls++) {
+                int next = row[cls];
+                if (next > 0) {
+                    fail[next] = delta[fail[state] * alphabetSize + cls];
+                    delta[state * alphabetSize + cls] = next;
+                    queue.add(next);
+                } else {
+                    delta[state * alphabetSize + cls] = delta[fail[state] * alphabetSize + cls];
+                }
+            }
+        }
+        this.outputs = out.toArray(new long[0][]);
+    }
+
+    private int[] newRow() {
+        return new int[alphabetSize];
+    }
+
+    private int classOf(int symbol) {
+        if (symbol < 256) {
+            return lowClass[symbol];
+        }
+        Integer cls = highClass.get(symbol);
+        return cls != null ? cls : 0;
+    }
+
+    /**
+     * Recorre el texto y acumula en hits los identificadores encontrados
+     */
+    void scan(CharSequence text, int from, int to, long[] hits) {
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = delta[state * alphabetSize + classOf(text.charAt(i))];
+            long[] mask = outputs[state];
+            if (mask != null) {
+                for (int w = 0; w < mask.length; w++) {
+                    hits[w] |= mask[w];
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre bytes sin decodificar; requiere un autómata construido con {@link #symbols(String, Charset)}
+     */
+    void scan(ByteBuffer buffer, int from, int to, long[] hits) {
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = delta[state * alphabetSize + lowClass[buffer.get(i) & 0xFF]];
+            long[] mask = outputs[state];
+            if (mask != null) {
+                for (int w = 0; w < mask.length; w++) {
+                    hits[w] |= mask[w];
+                }
+            }
+        }
+    }
+
+    /**
+     * Convierte un literal en la secuencia de símbolos (chars) que usa el autómata
+     */
+    static int[] symbols(String literal) {
+        int[] symbols = new int[literal.length()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = literal.charAt(i);
+        }
+        return symbols;
+    }
+
+    /**
+     * Convierte un literal en los bytes (sin signo) que lo representan en el charset dado
+     */
+    static int[] symbols(String literal, Charset charset) {
+        byte[] bytes = literal.getBytes(charset);
+        int[] symbols = new int[bytes.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = bytes[i] & 0xFF;
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.mcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Señal de cancelación de una llamada en curso (notifications/cancelled). Los
+ * analizadores la consultan por archivo y cada pocas líneas, y las esperas
+ * bloqueantes se registran con onCancel para despertar en cuanto llega.
+ */
+final class CancellationToken {
+    static final CancellationToken NONE = new CancellationToken();
+
+    // Líneas entre consultas dentro de un archivo: una lectura volatile cada 1024 líneas
+    private static final int LINE_CHECK_MASK = 1023;
+
+    /**
+     * Acción registrada con onCancel; close la retira si la espera terminó antes
+     */
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final List<Runnable> actions = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Marca la llamada como cancelada y ejecuta las acciones registradas
+     */
+    void cancel() {
+        if (this == NONE) return;
+        List<Runnable> pending;
+        synchronized (actions) {
+            if (cancelled) return;
+            cancelled = true;
+            pending = new ArrayList<>(actions);
+            actions.clear();
+        }
+        for (Runnable action : pending) {
+            action.run();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Escaneo cancelado");
+        }
+    }
+
+    /**
+     * Para los bucles por línea: solo consulta la señal cada LINE_CHECK_MASK + 1 líneas
+     */
+    void checkLine(int lineNumber) {
+        if ((lineNumber & LINE_CHECK_MASK) == 0) {
+            throwIfCancelled();
+        }
+    }
+
+    /**
+     * Ejecuta la acción al cancelar, o de inmediato si ya estaba cancelada
+     */
+    Registration onCancel(Runnable action) {
+        if (this == NONE) {
+            return () -> {};
+        }
+        synchronized (actions) {
+            if (!cancelled) {
+                actions.add(action);
+                return () -> {
+                    synchronized (actions) {
+                        actions.remove(action);
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> {};
+    }
+}
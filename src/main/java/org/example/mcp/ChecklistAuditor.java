@@ -3,13 +3,12 @@ package org.example.mcp;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class ChecklistAuditor {
-    private final Map<String, List<ChecklistRule>> rules;
+    private final RuleEngine<ChecklistRule> ruleEngine;
     
     public ChecklistAuditor() {
-        this.rules = initializeChecklistRules();
+        this.ruleEngine = new RuleEngine<>("ChecklistAuditor", initializeChecklistRules());
     }
     
     private Map<String, List<ChecklistRule>> initializeChecklistRules() {
@@ -29,7 +28,7 @@ public class ChecklistAuditor {
         
         // Validaciones
         javaRules.add(new ChecklistRule("MISSING_NULL_CHECK", "\\w+\\.\\w+\\(", "VALIDACIÓN", "Verificar validación de parámetros null"));
-        javaRules.add(new ChecklistRule("HARDCODED_VALUES", "\"[A-Z_]{3,}\"", "CONFIGURACIÓN", "Mover valores hardcodeados a configuración"));
+        javaRules.add(new ChecklistRule("HARDCODED_VALUES", "\"[A-Z_]{3,}\"", "CONFIGURACIÓN", "Mover valores hardcodeados a configuración", SourceTokens.STRING));
         
         // Performance y recursos
         javaRules.add(new ChecklistRule("RESOURCE_LEAK", "new\\s+(FileInputStream|FileOutputStream|BufferedReader)", "RECURSOS", "Usar try-with-resources"));
@@ -54,16 +53,21 @@ public class ChecklistAuditor {
     }
     
     public String auditProject(String projectPath) {
+        return auditProject(projectPath, ScanProgress.NONE, CancellationToken.NONE);
+    }
+    
+    String auditProject(String projectPath, ScanProgress progress, CancellationToken cancellation) {
         try {
             Path path = Paths.get(projectPath);
             if (!Files.exists(path)) {
                 return "❌ Proyecto no encontrado: " + projectPath;
             }
             
-            List<ChecklistIssue> issues = new ArrayList<>();
+            FindingStore issues = new FindingStore();
             Map<String, Integer> categoryCount = new HashMap<>();
             
-            scanDirectory(path, issues, categoryCount);
+            scanDirectory(path, issues, categoryCount, progress, cancellation);
+            progress.finish();
             
             return formatChecklistResults(issues, categoryCount, projectPath);
             
@@ -72,11 +76,28 @@ public class ChecklistAuditor {
         }
     }
     
-    private void scanDirectory(Path dir, List<ChecklistIssue> issues, Map<String, Integer> categoryCount) throws IOException {
-        Files.walk(dir)
-            .filter(Files::isRegularFile)
-            .filter(this::isSupportedFile)
-            .forEach(file -> scanFileForChecklist(file, issues, categoryCount));
+    private void scanDirectory(Path dir, FindingStore issues, Map<String, Integer> categoryCount,
+                               ScanProgress progress, CancellationToken cancellation) throws IOException {
+        List<Path> files;
+        try (var stream = Files.walk(dir)) {
+            files = stream.peek(file -> cancellation.throwIfCancelled())
+                          .filter(Files::isRegularFile)
+                          .filter(this::isSupportedFile)
+                          .collect(java.util.stream.Collectors.toList());
+        }
+        
+        progress.filesDiscovered(files.size());
+        progress.discoveryFinished();
+        
+        FindingStore found = ParallelScanner.scan(files, (file, fileIssues) -> {
+            cancellation.throwIfCancelled();
+            long bytes = scanFileForChecklist(file, fileIssues, cancellation);
+            progress.fileScanned(bytes, fileIssues.size());
+        });
+        for (int i = 0; i < found.size(); i++) {
+            categoryCount.merge(found.getLevel(i), 1, Integer::sum);
+        }
+        issues.addAll(found);
     }
     
     private boolean isSupportedFile(Path file) {
@@ -84,27 +105,41 @@ public class ChecklistAuditor {
         return name.endsWith(".java") || name.endsWith(".js") || name.endsWith(".ts") || name.endsWith(".jsx") || name.endsWith(".tsx");
     }
     
-    private void scanFileForChecklist(Path file, List<ChecklistIssue> issues, Map<String, Integer> categoryCount) {
+    /**
+     * Escanea el archivo y devuelve los bytes leídos
+     */
+    long scanFileForChecklist(Path file, FindingStore issues, CancellationToken cancellation) {
         try {
-            String content = new String(Files.readAllBytes(file));
             String extension = getFileExtension(file);
-            List<ChecklistRule> fileRules = rules.get(extension);
-            if (fileRules == null) return;
+            RuleEngine.CompiledRuleSet<ChecklistRule> fileRules = ruleEngine.forExtension(extension);
+            if (fileRules == null) return 0;
             
-            String[] lines = content.split("\n");
-            for (int i = 0; i < lines.length; i++) {
-                for (ChecklistRule rule : fileRules) {
-                    if (Pattern.compile(rule.pattern).matcher(lines[i]).find()) {
-                        issues.add(new ChecklistIssue(
-                            rule.name, rule.category, rule.recommendation,
-                            file.toString(), i + 1, lines[i].trim()
-                        ));
-                        categoryCount.put(rule.category, categoryCount.getOrDefault(rule.category, 0) + 1);
+            MappedLines lines = MappedLines.map(file, java.nio.charset.Charset.forName(Config.getFileEncoding()));
+            try {
+                SourceTokens.LineScopes scopes = SourceTokens.lineScopes(file, lines);
+                List<ChecklistRule> timedOut = new ArrayList<>(1);
+                while (lines.next()) {
+                    cancellation.checkLine(lines.lineNumber());
+                    long[] candidates = lines.candidates(fileRules);
+                    if (candidates == null) continue;
+                    
+                    String line = lines.text();
+                    for (ChecklistRule rule : fileRules.match(line, candidates, scopes != null ? scopes.at(line) : null, timedOut)) {
+                        issues.add(file, rule, lines);
                     }
+                    for (ChecklistRule rule : timedOut) {
+                        issues.add(file, RuleEngine.TIMEOUT_FINDING, "BAJO", "Regla abortada por exceder el tiempo máximo por línea",
+                            lines.lineNumber(), "Regla: " + rule.name);
+                    }
+                    timedOut.clear();
                 }
+                return lines.size();
+            } finally {
+                lines.release();
             }
         } catch (IOException e) {
             // Ignorar archivos no legibles
+            return 0;
         }
     }
     
@@ -114,7 +149,7 @@ public class ChecklistAuditor {
         return lastDot > 0 ? name.substring(lastDot + 1) : "";
     }
     
-    private String formatChecklistResults(List<ChecklistIssue> issues, Map<String, Integer> categoryCount, String projectPath) {
+    private String formatChecklistResults(FindingStore issues, Map<String, Integer> categoryCount, String projectPath) {
         StringBuilder result = new StringBuilder();
         result.append("📋 AUDITORÍA DE CHECKLIST DE DESARROLLO\n");
         result.append("📁 ").append(projectPath).append("\n");
@@ -130,33 +165,37 @@ public class ChecklistAuditor {
         
         result.append("\n🔍 DETALLES:\n");
         
-        // Agrupar por categoría
-        Map<String, List<ChecklistIssue>> groupedIssues = new HashMap<>();
-        for (ChecklistIssue issue : issues) {
-            groupedIssues.computeIfAbsent(issue.category, k -> new ArrayList<>()).add(issue);
+        // Agrupar por categoría (filas del almacén; el código solo se lee para las que se muestran)
+        Map<String, List<Integer>> groupedIssues = new HashMap<>();
+        for (int i = 0; i < issues.size(); i++) {
+            groupedIssues.computeIfAbsent(issues.getLevel(i), k -> new ArrayList<>()).add(i);
         }
         
-        groupedIssues.entrySet().stream()
-            .sorted(Map.Entry.comparingByKey())
-            .forEach(entry -> {
-                result.append("\n").append(getCategoryIcon(entry.getKey())).append(" ").append(entry.getKey()).append(":\n");
-                entry.getValue().stream()
-                    .limit(5) // Limitar a 5 por categoría para no saturar
-                    .forEach(issue -> result.append(formatChecklistIssue(issue)).append("\n"));
-                
-                if (entry.getValue().size() > 5) {
-                    result.append("  ... y ").append(entry.getValue().size() - 5).append(" más\n");
-                }
-            });
+        try (FindingStore.Snippets snippets = issues.snippets()) {
+            groupedIssues.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    result.append("\n").append(getCategoryIcon(entry.getKey())).append(" ").append(entry.getKey()).append(":\n");
+                    entry.getValue().stream()
+                        .limit(5) // Limitar a 5 por categoría para no saturar
+                        .forEach(row -> result.append(formatChecklistIssue(issues, row, snippets)).append("\n"));
+                    
+                    if (entry.getValue().size() > 5) {
+                        result.append("  ... y ").append(entry.getValue().size() - 5).append(" más\n");
+                    }
+                });
+        }
         
         return result.toString();
     }
     
-    private String formatChecklistIssue(ChecklistIssue issue) {
+    private String formatChecklistIssue(FindingStore issues, int row, FindingStore.Snippets snippets) {
+        String file = issues.getFile(row);
+        String code = snippets.code(row);
         return String.format("  📄 %s:%d\n  💻 %s\n  💡 %s",
-            issue.file.substring(issue.file.lastIndexOf('\\') + 1), issue.line,
-            issue.code.length() > 80 ? issue.code.substring(0, 80) + "..." : issue.code,
-            issue.recommendation);
+            file.substring(file.lastIndexOf('\\') + 1), issues.getLine(row),
+            code.length() > 80 ? code.substring(0, 80) + "..." : code,
+            issues.getAdvice(row));
     }
     
     private String getCategoryIcon(String category) {
@@ -174,29 +213,35 @@ public class ChecklistAuditor {
         }
     }
     
-    static class ChecklistRule {
+    static class ChecklistRule implements RuleEngine.Rule {
         final String name, pattern, category, recommendation;
+        final int scopes;
         
         ChecklistRule(String name, String pattern, String category, String recommendation) {
-            this.name = name;
-            this.pattern = pattern;
-            this.category = category;
-            this.recommendation = recommendation;
+            this(name, pattern, category, recommendation, SourceTokens.CODE);
         }
-    }
-    
-    static class ChecklistIssue {
-        final String name, category, recommendation, file, code;
-        final int line;
         
-        ChecklistIssue(String name, String category, String recommendation, 
-                      String file, int line, String code) {
+        ChecklistRule(String name, String pattern, String category, String recommendation, int scopes) {
             this.name = name;
+            this.pattern = pattern;
             this.category = category;
             this.recommendation = recommendation;
-            this.file = file;
-            this.line = line;
-            this.code = code;
+            this.scopes = scopes;
         }
+        
+        @Override
+        public String getName() { return name; }
+        
+        @Override
+        public String getPattern() { return pattern; }
+        
+        @Override
+        public String getLevel() { return category; }
+        
+        @Override
+        public String getAdvice() { return recommendation; }
+        
+        @Override
+        public int getScopes() { return scopes; }
     }
 }
\ No newline at end of file
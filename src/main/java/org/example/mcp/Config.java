@@ -21,6 +21,27 @@ public class Config {
     private static final int DEFAULT_MAX_LINE_LENGTH = 10000; // 10KB
     private static final String DEFAULT_ENCODING = "UTF-8";
     private static final int DEFAULT_MAX_DEPTH = 10;
+    private static final int DEFAULT_SCAN_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_READ_CONCURRENCY = 256;
+    private static final long DEFAULT_READ_MAX_BYTES = 64L * 1024 * 1024; // 64MB
+    private static final int DEFAULT_MMAP_MIN_BYTES = 256 * 1024; // 256KB
+    private static final String DEFAULT_CACHE_DIR_NAME = ".mcp-cache";
+    private static final int DEFAULT_PROGRESS_INTERVAL_MS = 250;
+    private static final long DEFAULT_SCAN_BUDGET_MS = 25_000; // por debajo del timeout habitual de los clientes MCP
+    private static final long DEFAULT_SCAN_BUDGET_BYTES = 512L * 1024 * 1024; // 512MB
+    private static final long DEFAULT_SCAN_BUDGET_FINDINGS = 1000;
+    private static final int DEFAULT_REQUEST_WORKERS = 4;
+    private static final String DEFAULT_LOG_LEVEL = "INFO";
+    private static final int DEFAULT_LOG_PAYLOAD_MAX = 256;
+    private static final int DEFAULT_LOG_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_RESULTS_PAGE_SIZE = 100;
+    private static final long DEFAULT_RESULTS_MAX_BYTES = 64L * 1024 * 1024; // 64MB
+    private static final long DEFAULT_RESULT_CACHE_MAX_BYTES = 32L * 1024 * 1024; // 32MB
+    private static final long DEFAULT_TOKEN_CACHE_MAX_BYTES = 64L * 1024 * 1024; // 64MB
+    private static final long DEFAULT_RULE_TIMEOUT_MS = 250;
+    private static final int DEFAULT_HTTP_PORT = 0; // desactivado: stdio
+    private static final int DEFAULT_HTTP_WORKERS = 8;
+    private static final int DEFAULT_DAEMON_MAX_CONNECTIONS = 16;
     
     static {
         loadConfiguration();
@@ -83,6 +104,124 @@ public class Config {
                 System.err.println("Warning: MCP_MAX_DEPTH inválido: " + maxDepth);
             }
         }
+        
+        // Hilos para el escaneo paralelo
+        String scanWorkers = System.getenv("MCP_SCAN_WORKERS");
+        if (scanWorkers != null) {
+            properties.setProperty("scan.workers", scanWorkers);
+        }
+        
+        // Lecturas de archivo simultáneas en el pipeline de escaneo
+        String readConcurrency = System.getenv("MCP_READ_CONCURRENCY");
+        if (readConcurrency != null) {
+            properties.setProperty("scan.read.concurrency", readConcurrency);
+        }
+        String readMaxBytes = System.getenv("MCP_READ_MAX_BYTES");
+        if (readMaxBytes != null) {
+            properties.setProperty("scan.read.max.bytes", readMaxBytes);
+        }
+        String mmapMinBytes = System.getenv("MCP_MMAP_MIN_BYTES");
+        if (mmapMinBytes != null) {
+            properties.setProperty("scan.mmap.min.bytes", mmapMinBytes);
+        }
+        
+        // Caché incremental de escaneos
+        String cacheEnabled = System.getenv("MCP_CACHE_ENABLED");
+        if (cacheEnabled != null) {
+            properties.setProperty("cache.enabled", cacheEnabled);
+        }
+        String cacheDir = System.getenv("MCP_CACHE_DIR");
+        if (cacheDir != null) {
+            properties.setProperty("cache.dir", cacheDir);
+        }
+        
+        // Intervalo mínimo entre notificaciones de progreso
+        String progressInterval = System.getenv("MCP_PROGRESS_INTERVAL_MS");
+        if (progressInterval != null) {
+            properties.setProperty("progress.interval.ms", progressInterval);
+        }
+        
+        // Presupuestos por llamada de escaneo
+        String budgetMillis = System.getenv("MCP_SCAN_BUDGET_MS");
+        if (budgetMillis != null) {
+            properties.setProperty("scan.budget.ms", budgetMillis);
+        }
+        String budgetBytes = System.getenv("MCP_SCAN_BUDGET_BYTES");
+        if (budgetBytes != null) {
+            properties.setProperty("scan.budget.bytes", budgetBytes);
+        }
+        String budgetFindings = System.getenv("MCP_SCAN_BUDGET_FINDINGS");
+        if (budgetFindings != null) {
+            properties.setProperty("scan.budget.findings", budgetFindings);
+        }
+        
+        // Llamadas a herramientas atendidas en paralelo
+        String requestWorkers = System.getenv("MCP_REQUEST_WORKERS");
+        if (requestWorkers != null) {
+            properties.setProperty("request.workers", requestWorkers);
+        }
+        
+        // Log
+        String logLevel = System.getenv("MCP_LOG_LEVEL");
+        if (logLevel != null) {
+            properties.setProperty("log.level", logLevel);
+        }
+        String logPayloadMax = System.getenv("MCP_LOG_PAYLOAD_MAX");
+        if (logPayloadMax != null) {
+            properties.setProperty("log.payload.max", logPayloadMax);
+        }
+        String logBufferSize = System.getenv("MCP_LOG_BUFFER_SIZE");
+        if (logBufferSize != null) {
+            properties.setProperty("log.buffer.size", logBufferSize);
+        }
+        
+        // Resultados paginados como recursos
+        String resultsPageSize = System.getenv("MCP_RESULTS_PAGE_SIZE");
+        if (resultsPageSize != null) {
+            properties.setProperty("results.page.size", resultsPageSize);
+        }
+        String resultsMaxBytes = System.getenv("MCP_RESULTS_MAX_BYTES");
+        if (resultsMaxBytes != null) {
+            properties.setProperty("results.max.bytes", resultsMaxBytes);
+        }
+        
+        // Caché de reportes, válidos mientras no cambie lo que leyó el escaneo
+        String resultCacheMaxBytes = System.getenv("MCP_RESULT_CACHE_MAX_BYTES");
+        if (resultCacheMaxBytes != null) {
+            properties.setProperty("result.cache.max.bytes", resultCacheMaxBytes);
+        }
+        
+        // Tokens de archivos compartidos entre analizadores durante una petición
+        String tokenCacheMaxBytes = System.getenv("MCP_TOKEN_CACHE_MAX_BYTES");
+        if (tokenCacheMaxBytes != null) {
+            properties.setProperty("token.cache.max.bytes", tokenCacheMaxBytes);
+        }
+        
+        // Límite por línea de las reglas que necesitan backtracking
+        String ruleTimeout = System.getenv("MCP_RULE_TIMEOUT_MS");
+        if (ruleTimeout != null) {
+            properties.setProperty("rule.timeout.ms", ruleTimeout);
+        }
+        
+        // Transporte HTTP local
+        String httpPort = System.getenv("MCP_HTTP_PORT");
+        if (httpPort != null) {
+            properties.setProperty("http.port", httpPort);
+        }
+        String httpWorkers = System.getenv("MCP_HTTP_WORKERS");
+        if (httpWorkers != null) {
+            properties.setProperty("http.workers", httpWorkers);
+        }
+        
+        // Daemon sobre socket Unix
+        String daemonSocket = System.getenv("MCP_DAEMON_SOCKET");
+        if (daemonSocket != null) {
+            properties.setProperty("daemon.socket", daemonSocket);
+        }
+        String daemonMaxConnections = System.getenv("MCP_DAEMON_MAX_CONNECTIONS");
+        if (daemonMaxConnections != null) {
+            properties.setProperty("daemon.max.connections", daemonMaxConnections);
+        }
     }
     
     /**
@@ -128,6 +267,273 @@ public class Config {
         }
     }
     
+    /**
+     * Obtiene el número de hilos para el escaneo paralelo de directorios (1 = secuencial)
+     */
+    public static int getScanWorkers() {
+        String value = properties.getProperty("scan.workers", String.valueOf(DEFAULT_SCAN_WORKERS));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_SCAN_WORKERS;
+        }
+    }
+    
+    /**
+     * Obtiene el máximo de lecturas de archivo en curso dentro del pipeline de escaneo
+     */
+    public static int getReadConcurrency() {
+        String value = properties.getProperty("scan.read.concurrency", String.valueOf(DEFAULT_READ_CONCURRENCY));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_READ_CONCURRENCY;
+        }
+    }
+    
+    /**
+     * Obtiene el máximo de bytes leídos en memoria a la vez dentro del pipeline de escaneo,
+     * entre lecturas en curso y contenidos esperando al matching
+     */
+    public static long getReadMaxBytes() {
+        String value = properties.getProperty("scan.read.max.bytes", String.valueOf(DEFAULT_READ_MAX_BYTES));
+        try {
+            return Math.max(1, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_READ_MAX_BYTES;
+        }
+    }
+    
+    /**
+     * Indica si los resultados por archivo se guardan en la caché incremental en disco
+     */
+    public static boolean isCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("cache.enabled", "true"));
+    }
+    
+    /**
+     * Obtiene el directorio de la caché de escaneos para un repositorio.
+     * Por defecto es .mcp-cache dentro del propio repositorio.
+     */
+    public static Path getCacheDirectory(Path repoRoot) {
+        String configured = properties.getProperty("cache.dir");
+        if (configured != null && !configured.trim().isEmpty()) {
+            return Paths.get(configured.trim());
+        }
+        return repoRoot.resolve(DEFAULT_CACHE_DIR_NAME);
+    }
+    
+    /**
+     * Obtiene el tamaño desde el que un archivo se mapea en memoria; los más chicos se leen
+     * en un buffer de heap reutilizado
+     */
+    public static int getMmapMinBytes() {
+        String value = properties.getProperty("scan.mmap.min.bytes", String.valueOf(DEFAULT_MMAP_MIN_BYTES));
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_MMAP_MIN_BYTES;
+        }
+    }
+    
+    /**
+     * Obtiene el número de llamadas tools/call que el servidor ejecuta a la vez
+     */
+    public static int getRequestWorkers() {
+        String value = properties.getProperty("request.workers", String.valueOf(DEFAULT_REQUEST_WORKERS));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_REQUEST_WORKERS;
+        }
+    }
+    
+    /**
+     * Obtiene el nivel de log: ERROR, WARN, INFO, DEBUG o TRACE
+     */
+    public static String getLogLevel() {
+        return properties.getProperty("log.level", DEFAULT_LOG_LEVEL);
+    }
+    
+    /**
+     * Obtiene el máximo de caracteres de un payload en el log (salvo en TRACE)
+     */
+    public static int getLogPayloadMax() {
+        String value = properties.getProperty("log.payload.max", String.valueOf(DEFAULT_LOG_PAYLOAD_MAX));
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_LOG_PAYLOAD_MAX;
+        }
+    }
+    
+    /**
+     * Obtiene la capacidad del buffer de log; al llenarse se descartan mensajes
+     */
+    public static int getLogBufferSize() {
+        String value = properties.getProperty("log.buffer.size", String.valueOf(DEFAULT_LOG_BUFFER_SIZE));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_LOG_BUFFER_SIZE;
+        }
+    }
+    
+    /**
+     * Obtiene los hallazgos por página; un escaneo con más se guarda como recurso paginado
+     */
+    public static int getResultsPageSize() {
+        String value = properties.getProperty("results.page.size", String.valueOf(DEFAULT_RESULTS_PAGE_SIZE));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_RESULTS_PAGE_SIZE;
+        }
+    }
+    
+    /**
+     * Obtiene la memoria máxima (estimada) de los resultados guardados antes de descartar por LRU
+     */
+    public static long getResultsMaxBytes() {
+        String value = properties.getProperty("results.max.bytes", String.valueOf(DEFAULT_RESULTS_MAX_BYTES));
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_RESULTS_MAX_BYTES;
+        }
+    }
+    
+    /**
+     * Obtiene el tamaño máximo de la caché de reportes en memoria; 0 la desactiva
+     */
+    public static long getResultCacheMaxBytes() {
+        String value = properties.getProperty("result.cache.max.bytes", String.valueOf(DEFAULT_RESULT_CACHE_MAX_BYTES));
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_RESULT_CACHE_MAX_BYTES;
+        }
+    }
+    
+    /**
+     * Obtiene el tamaño máximo de la caché de tokens de una petición en curso; 0 la desactiva
+     */
+    public static long getTokenCacheMaxBytes() {
+        String value = properties.getProperty("token.cache.max.bytes", String.valueOf(DEFAULT_TOKEN_CACHE_MAX_BYTES));
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_TOKEN_CACHE_MAX_BYTES;
+        }
+    }
+    
+    /**
+     * Obtiene el tiempo máximo de una regla con backtracking sobre una línea; 0 no lo limita
+     */
+    public static long getRuleTimeoutMillis() {
+        String value = properties.getProperty("rule.timeout.ms", String.valueOf(DEFAULT_RULE_TIMEOUT_MS));
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_RULE_TIMEOUT_MS;
+        }
+    }
+    
+    /**
+     * Obtiene el puerto del transporte HTTP en localhost; 0 usa stdio
+     */
+    public static int getHttpPort() {
+        String value = properties.getProperty("http.port", String.valueOf(DEFAULT_HTTP_PORT));
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_HTTP_PORT;
+        }
+    }
+    
+    /**
+     * Obtiene el número de hilos que atienden peticiones HTTP
+     */
+    public static int getHttpWorkers() {
+        String value = properties.getProperty("http.workers", String.valueOf(DEFAULT_HTTP_WORKERS));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_HTTP_WORKERS;
+        }
+    }
+    
+    /**
+     * Obtiene el socket Unix del daemon (--daemon) y del shim (--connect).
+     * Por defecto es mcp/mcp-server.sock en XDG_RUNTIME_DIR o, sin él, .mcp/mcp-server.sock
+     * en el home: un directorio propio del usuario, no el temporal compartido.
+     */
+    public static Path getDaemonSocket() {
+        String configured = properties.getProperty("daemon.socket");
+        if (configured != null && !configured.trim().isEmpty()) {
+            return Paths.get(configured.trim());
+        }
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDir != null && !runtimeDir.trim().isEmpty()) {
+            return Paths.get(runtimeDir.trim(), "mcp", "mcp-server.sock");
+        }
+        return Paths.get(System.getProperty("user.home"), ".mcp", "mcp-server.sock");
+    }
+    
+    /**
+     * Obtiene el máximo de sesiones simultáneas del daemon
+     */
+    public static int getDaemonMaxConnections() {
+        String value = properties.getProperty("daemon.max.connections", String.valueOf(DEFAULT_DAEMON_MAX_CONNECTIONS));
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_DAEMON_MAX_CONNECTIONS;
+        }
+    }
+    
+    /**
+     * Obtiene el intervalo mínimo en milisegundos entre notificaciones de progreso
+     */
+    public static int getProgressIntervalMillis() {
+        String value = properties.getProperty("progress.interval.ms", String.valueOf(DEFAULT_PROGRESS_INTERVAL_MS));
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return DEFAULT_PROGRESS_INTERVAL_MS;
+        }
+    }
+    
+    /**
+     * Obtiene el presupuesto de tiempo por llamada de escaneo, en milisegundos
+     */
+    public static long getScanBudgetMillis() {
+        return getPositiveLong("scan.budget.ms", DEFAULT_SCAN_BUDGET_MS);
+    }
+    
+    /**
+     * Obtiene el presupuesto de bytes a leer por llamada de escaneo
+     */
+    public static long getScanBudgetBytes() {
+        return getPositiveLong("scan.budget.bytes", DEFAULT_SCAN_BUDGET_BYTES);
+    }
+    
+    /**
+     * Obtiene el presupuesto de hallazgos por llamada de escaneo
+     */
+    public static long getScanBudgetFindings() {
+        return getPositiveLong("scan.budget.findings", DEFAULT_SCAN_BUDGET_FINDINGS);
+    }
+    
+    private static long getPositiveLong(String key, long defaultValue) {
+        String value = properties.getProperty(key, String.valueOf(defaultValue));
+        try {
+            return Math.max(1, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
     /**
      * Valida si un path es seguro para procesar
      */
@@ -223,6 +629,23 @@ public class Config {
         info.append("Max File Size: ").append(getMaxFileSize()).append(" bytes\n");
         info.append("Max Line Length: ").append(getMaxLineLength()).append(" characters\n");
         info.append("Max Depth: ").append(getMaxDepth()).append(" levels\n");
+        info.append("Scan Workers: ").append(getScanWorkers()).append("\n");
+        info.append("Read Concurrency: ").append(getReadConcurrency()).append("\n");
+        info.append("Read Max Bytes: ").append(getReadMaxBytes()).append(" bytes\n");
+        info.append("Mmap Min Size: ").append(getMmapMinBytes()).append(" bytes\n");
+        info.append("Scan Cache: ").append(isCacheEnabled() ? "enabled" : "disabled").append("\n");
+        info.append("Progress Interval: ").append(getProgressIntervalMillis()).append(" ms\n");
+        info.append("Scan Budget: ").append(getScanBudgetMillis()).append(" ms, ")
+            .append(getScanBudgetBytes()).append(" bytes, ").append(getScanBudgetFindings()).append(" findings\n");
+        info.append("Request Workers: ").append(getRequestWorkers()).append("\n");
+        info.append("Log Level: ").append(getLogLevel()).append("\n");
+        info.append("Results Page Size: ").append(getResultsPageSize()).append("\n");
+        info.append("Result Cache: ").append(getResultCacheMaxBytes()).append(" bytes\n");
+        info.append("Token Cache: ").append(getTokenCacheMaxBytes()).append(" bytes\n");
+        info.append("Rule Timeout: ").append(getRuleTimeoutMillis()).append(" ms\n");
+        info.append("HTTP: ").append(getHttpPort() > 0 ? "localhost:" + getHttpPort() : "disabled").append("\n");
+        info.append("Daemon Socket: ").append(getDaemonSocket()).append(" (máx ")
+            .append(getDaemonMaxConnections()).append(" conexiones)\n");
         return info.toString();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,330 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Almacén columnar de hallazgos, común a los tres analizadores. En lugar de un
+ * objeto por hallazgo con el path completo y una copia de la línea, cada hallazgo
+ * es una fila de arrays de int: archivo y regla codificados por diccionario,
+ * nivel (severidad o categoría), número de línea y el rango en bytes de la línea
+ * dentro del archivo. El texto de la línea solo se lee del disco al formatear.
+ *
+ * Las líneas que no pueden releerse del archivo (contenido del index de git,
+ * charsets sin escaneo por bytes, textos sintéticos como "Tamaño: ...") se
+ * guardan como literal.
+ *
+ * No es thread-safe: cada hilo llena su propio almacén y luego se combinan con addAll.
+ */
+final class FindingStore {
+    private static final int LITERAL = -1;
+
+    private final Dictionary files = new Dictionary();
+    private final List<Path> paths = new ArrayList<>();
+    private final Dictionary rules = new Dictionary();      // nombre + consejo
+    private final List<String> ruleNames = new ArrayList<>();
+    private final List<String> ruleAdvice = new ArrayList<>();
+    private final Dictionary levels = new Dictionary();
+    private final List<String> literals = new ArrayList<>();
+
+    private int size;
+    private int[] fileIds = new int[8];
+    private int[] ruleIds = new int[8];
+    private int[] levelIds = new int[8];
+    private int[] lines = new int[8];
+    private int[] codeStarts = new int[8];
+    private int[] codeEnds = new int[8];    // fin exclusivo, o índice en literals
+
+    /**
+     * Agrega un hallazgo sobre la línea actual del cursor; su texto se relee del archivo al formatear
+     */
+    void add(Path file, RuleEngine.Rule rule, MappedLines source) {
+        if (source.isFileBacked() && source.lineStart() >= 0) {
+            add(file, rule.getName(), rule.getLevel(), rule.getAdvice(), source.lineNumber(),
+                source.lineStart(), source.lineEnd());
+        } else {
+            add(file, rule.getName(), rule.getLevel(), rule.getAdvice(), source.lineNumber(), source.text().trim());
+        }
+    }
+
+    /**
+     * Agrega un hallazgo cuyo código se guarda tal cual
+     */
+    void add(Path file, String name, String level, String advice, int line, String code) {
+        literals.add(code);
+        append(file, name, level, advice, line, LITERAL, literals.size() - 1);
+    }
+
+    /**
+     * Agrega un hallazgo cuyo código es el rango [codeStart, codeEnd) en bytes del archivo
+     */
+    void add(Path file, String name, String level, String advice, int line, int codeStart, int codeEnd) {
+        append(file, name, level, advice, line, codeStart, codeEnd);
+    }
+
+    private void append(Path file, String name, String level, String advice, int line, int codeStart, int codeEnd) {
+        ensureCapacity(size + 1);
+        fileIds[size] = fileId(file);
+        ruleIds[size] = ruleId(name, advice);
+        levelIds[size] = levels.id(level);
+        lines[size] = line;
+        codeStarts[size] = codeStart;
+        codeEnds[size] = codeEnd;
+        size++;
+    }
+
+    private int fileId(Path file) {
+        int before = files.size();
+        int id = files.id(file.toString());
+        if (id == before) {
+            paths.add(file);
+        }
+        return id;
+    }
+
+    private int ruleId(String name, String advice) {
+        int before = rules.size();
+        int id = rules.id(name + '\0' + advice);
+        if (id == before) {
+            ruleNames.add(name);
+            ruleAdvice.add(advice);
+        }
+        return id;
+    }
+
+    /**
+     * Agrega al final todas las filas de otro almacén, traduciendo sus diccionarios
+     */
+    void addAll(FindingStore other) {
+        if (other.size == 0) {
+            return;
+        }
+        int[] fileMap = new int[other.files.size()];
+        for (int i = 0; i < fileMap.length; i++) {
+            fileMap[i] = fileId(other.paths.get(i));
+        }
+        int[] ruleMap = new int[other.rules.size()];
+        for (int i = 0; i < ruleMap.length; i++) {
+            ruleMap[i] = ruleId(other.ruleNames.get(i), other.ruleAdvice.get(i));
+        }
+        int[] levelMap = new int[other.levels.size()];
+        for (int i = 0; i < levelMap.length; i++) {
+            levelMap[i] = levels.id(other.levels.get(i));
+        }
+
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            fileIds[size] = fileMap[other.fileIds[i]];
+            ruleIds[size] = ruleMap[other.ruleIds[i]];
+            levelIds[size] = levelMap[other.levelIds[i]];
+            lines[size] = other.lines[i];
+            if (other.codeStarts[i] == LITERAL) {
+                literals.add(other.literals.get(other.codeEnds[i]));
+                codeStarts[size] = LITERAL;
+                codeEnds[size] = literals.size() - 1;
+            } else {
+                codeStarts[size] = other.codeStarts[i];
+                codeEnds[size] = other.codeEnds[i];
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Conserva solo las filas que cumplen la condición, manteniendo su orden
+     */
+    void retain(IntPredicate keep) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep.test(i)) {
+                fileIds[kept] = fileIds[i];
+                ruleIds[kept] = ruleIds[i];
+                levelIds[kept] = levelIds[i];
+                lines[kept] = lines[i];
+                codeStarts[kept] = codeStarts[i];
+                codeEnds[kept] = codeEnds[i];
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= fileIds.length) {
+            return;
+        }
+        int grown = Math.max(capacity, fileIds.length + (fileIds.length >> 1));
+        fileIds = Arrays.copyOf(fileIds, grown);
+        ruleIds = Arrays.copyOf(ruleIds, grown);
+        levelIds = Arrays.copyOf(levelIds, grown);
+        lines = Arrays.copyOf(lines, grown);
+        codeStarts = Arrays.copyOf(codeStarts, grown);
+        codeEnds = Arrays.copyOf(codeEnds, grown);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    String getFile(int row) {
+        return files.get(fileIds[row]);
+    }
+
+    Path getPath(int row) {
+        return paths.get(fileIds[row]);
+    }
+
+    String getName(int row) {
+        return ruleNames.get(ruleIds[row]);
+    }
+
+    String getLevel(int row) {
+        return levels.get(levelIds[row]);
+    }
+
+    String getAdvice(int row) {
+        return ruleAdvice.get(ruleIds[row]);
+    }
+
+    int getLine(int row) {
+        return lines[row];
+    }
+
+    /**
+     * Memoria aproximada que ocupa el almacén: columnas, literales y diccionarios
+     */
+    long estimatedBytes() {
+        long bytes = 6L * Integer.BYTES * fileIds.length;
+        for (String literal : literals) {
+            bytes += 48 + 2L * literal.length();
+        }
+        return bytes + files.estimatedBytes() + rules.estimatedBytes() + levels.estimatedBytes();
+    }
+
+    /**
+     * Código guardado como literal, o null si se relee del archivo
+     */
+    String getLiteralCode(int row) {
+        return codeStarts[row] == LITERAL ? literals.get(codeEnds[row]) : null;
+    }
+
+    int getCodeStart(int row) {
+        return codeStarts[row];
+    }
+
+    int getCodeEnd(int row) {
+        return codeEnds[row];
+    }
+
+    /**
+     * Copia en la que el código de cada fila ya está leído como literal. Para resultados que
+     * se formatean mucho después del escaneo: si el archivo se edita, sus rangos en bytes
+     * apuntarían a otras líneas o partirían caracteres
+     */
+    FindingStore withLiteralCode() {
+        FindingStore copy = new FindingStore();
+        try (Snippets snippets = snippets()) {
+            for (int row = 0; row < size; row++) {
+                copy.add(paths.get(fileIds[row]), ruleNames.get(ruleIds[row]), levels.get(levelIds[row]),
+                    ruleAdvice.get(ruleIds[row]), lines[row], snippets.code(row));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Lector de fragmentos de código para formatear; mantiene abierto el último archivo
+     * leído, así recorrer las filas en orden abre cada archivo una sola vez
+     */
+    Snippets snippets() {
+        return new Snippets();
+    }
+
+    final class Snippets implements AutoCloseable {
+        private final Charset charset = Charset.forName(Config.getFileEncoding());
+        private int openFile = -1;
+        private FileChannel channel;
+
+        /**
+         * Texto de la línea del hallazgo, sin espacios al inicio ni al final
+         */
+        String code(int row) {
+            if (codeStarts[row] == LITERAL) {
+                return literals.get(codeEnds[row]);
+            }
+            try {
+                if (openFile != fileIds[row]) {
+                    close();
+                    channel = FileChannel.open(paths.get(fileIds[row]), StandardOpenOption.READ);
+                    openFile = fileIds[row];
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(codeEnds[row] - codeStarts[row]);
+                while (buffer.hasRemaining() && channel.read(buffer, codeStarts[row] + buffer.position()) > 0) {
+                    // Leer hasta completar el rango
+                }
+                buffer.flip();
+                return charset.decode(buffer).toString().trim();
+            } catch (IOException e) {
+                // El archivo cambió o desapareció después del escaneo
+                return "";
+            }
+        }
+
+        @Override
+        public void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Solo lectura: nada que perder
+                }
+                channel = null;
+                openFile = -1;
+            }
+        }
+    }
+
+    /**
+     * Diccionario de strings a ids consecutivos
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        long estimatedBytes() {
+            long bytes = 0;
+            for (String value : values) {
+                bytes += 96 + 2L * value.length(); // String, entrada del mapa y del índice
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Archivos modificados de un repositorio git local, para analizar solo el diff.
+ * Con base_ref se toman los archivos añadidos o modificados en el working tree
+ * respecto al merge-base con esa referencia (más los no versionados); con
+ * staged_only, los del index, cuyo contenido se lee del blob y no del disco.
+ *
+ * Usa el binario git local: nunca contacta remotos, solo lee el directorio .git.
+ */
+final class GitChangeSet {
+    private static final long GIT_TIMEOUT_SECONDS = 60;
+
+    private final Path root;
+    private final String baseRef;
+    private final boolean stagedOnly;
+    private final Map<Path, String> files;   // path a analizar -> path relativo a la raíz del repositorio
+
+    private GitChangeSet(Path root, String baseRef, boolean stagedOnly, Map<Path, String> files) {
+        this.root = root;
+        this.baseRef = baseRef;
+        this.stagedOnly = stagedOnly;
+        this.files = files;
+    }
+
+    /**
+     * Calcula los archivos modificados bajo dir
+     *
+     * @param baseRef    rama, tag o commit de referencia; null para comparar con HEAD
+     * @param stagedOnly si solo se consideran los cambios del index
+     */
+    static GitChangeSet resolve(Path dir, String baseRef, boolean stagedOnly) throws IOException {
+        if (baseRef != null && baseRef.startsWith("-")) {
+            throw new IllegalArgumentException("base_ref inválido: " + baseRef);
+        }
+
+        Path scanRoot = dir.toRealPath();
+        Path root;
+        try {
+            root = Paths.get(text(git(scanRoot, "rev-parse", "--show-toplevel")).trim()).toRealPath();
+        } catch (IOException e) {
+            throw new IOException("No es un repositorio git: " + dir, e);
+        }
+
+        String base = baseRef != null ? mergeBase(root, baseRef) : headOrNull(root);
+
+        List<String> changed = new ArrayList<>();
+        if (stagedOnly) {
+            changed.addAll(paths(base != null
+                ? git(root, "diff", "--cached", "--name-only", "-z", "--no-renames", "--diff-filter=ACMR", base, "--")
+                : git(root, "ls-files", "-z", "--cached")));
+        } else {
+            if (base != null) {
+                changed.addAll(paths(git(root, "diff", "--name-only", "-z", "--no-renames", "--diff-filter=ACMR", base, "--")));
+            } else {
+                // Repositorio sin commits: todo lo del index cuenta como añadido
+                changed.addAll(paths(git(root, "ls-files", "-z", "--cached")));
+            }
+            changed.addAll(paths(git(root, "ls-files", "-z", "--others", "--exclude-standard")));
+        }
+
+        // Solo los archivos bajo el path pedido, expresados respecto a él como en un escaneo completo
+        Map<Path, String> files = new LinkedHashMap<>();
+        for (String gitPath : changed) {
+            Path absolute = root.resolve(gitPath).normalize();
+            if (absolute.startsWith(scanRoot)) {
+                files.putIfAbsent(dir.resolve(scanRoot.relativize(absolute)), gitPath);
+            }
+        }
+        return new GitChangeSet(root, baseRef, stagedOnly, files);
+    }
+
+    private static String mergeBase(Path root, String baseRef) throws IOException {
+        try {
+            git(root, "rev-parse", "--verify", "--quiet", baseRef + "^{commit}");
+        } catch (IOException e) {
+            throw new IOException("Referencia git no encontrada: " + baseRef, e);
+        }
+        try {
+            // Comparar contra el punto de bifurcación, no contra la punta de la rama base
+            return text(git(root, "merge-base", baseRef, "HEAD")).trim();
+        } catch (IOException e) {
+            // Historias sin ancestro común o HEAD sin commits
+            return baseRef;
+        }
+    }
+
+    private static String headOrNull(Path root) {
+        try {
+            git(root, "rev-parse", "--verify", "--quiet", "HEAD^{commit}");
+            return "HEAD";
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Archivos a analizar, en el orden que los reporta git
+     */
+    List<Path> getFiles() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    boolean isStagedOnly() {
+        return stagedOnly;
+    }
+
+    /**
+     * Contenido del archivo: el blob del index en modo staged_only, o el archivo del working tree
+     */
+    MappedLines open(Path file, Charset charset) throws IOException {
+        if (!stagedOnly) {
+            return MappedLines.map(file, charset);
+        }
+        String gitPath = files.get(file);
+        if (gitPath == null) {
+            throw new IOException("Archivo fuera del conjunto de cambios: " + file);
+        }
+        return MappedLines.wrap(git(root, "cat-file", "blob", ":" + gitPath), charset);
+    }
+
+    /**
+     * Encabezado para los reportes: qué se comparó y cuántos archivos resultaron
+     */
+    String describe() {
+        String against = baseRef != null ? baseRef : "HEAD";
+        return (stagedOnly ? "🔀 Cambios en staging respecto a " : "🔀 Cambios respecto a ")
+            + against + ": " + files.size() + " archivos\n";
+    }
+
+    private static List<String> paths(byte[] output) {
+        List<String> paths = new ArrayList<>();
+        for (String path : text(output).split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private static String text(byte[] output) {
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] git(Path dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-C");
+        command.add(dir.toString());
+        command.addAll(Arrays.asList(args));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // Consultas de solo lectura: no tomar index.lock para refrescar el index
+        builder.environment().put("GIT_OPTIONAL_LOCKS", "0");
+        builder.environment().put("GIT_TERMINAL_PROMPT", "0");
+        Process process = builder.start();
+        try {
+            process.getOutputStream().close();
+            // Las dos salidas se leen a la vez y fuera de este hilo: si git llena el pipe de stderr
+            // mientras se lee stdout se bloquea, y una lectura bloqueada impediría aplicar el timeout
+            CompletableFuture<byte[]> output = drain(process.getInputStream(), "mcp-git-out");
+            CompletableFuture<byte[]> errors = drain(process.getErrorStream(), "mcp-git-err");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(GIT_TIMEOUT_SECONDS);
+            if (!process.waitFor(GIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new TimeoutException();
+            }
+            // Un proceso hijo de git podría mantener abiertos los pipes después de que git termine
+            byte[] stdout = output.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            String error = text(errors.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)).trim();
+            if (process.exitValue() != 0) {
+                throw new IOException("git " + args[0] + " falló" + (error.isEmpty() ? "" : ": " + error));
+            }
+            return stdout;
+        } catch (TimeoutException e) {
+            throw new IOException("git " + args[0] + " no respondió en " + GIT_TIMEOUT_SECONDS + "s");
+        } catch (ExecutionException e) {
+            throw new IOException("git " + args[0] + ": error leyendo su salida", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("git " + args[0] + " interrumpido", e);
+        } finally {
+            // Forzado: un git colgado podría ignorar SIGTERM, y así se cierran los pipes de los lectores
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Lee el stream completo en un hilo daemon propio
+     */
+    private static CompletableFuture<byte[]> drain(InputStream stream, String name) {
+        CompletableFuture<byte[]> content = new CompletableFuture<>();
+        Thread reader = new Thread(() -> {
+            try (InputStream in = stream) {
+                content.complete(in.readAllBytes());
+            } catch (IOException e) {
+                content.completeExceptionally(e);
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+        return content;
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.mcp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.mcp.model.MCPMessage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+/**
+ * Transporte Streamable HTTP: cada mensaje JSON-RPC llega en un POST a /mcp y su
+ * respuesta vuelve en el cuerpo, como application/json o, si el cliente acepta
+ * text/event-stream, como SSE con las notificaciones de progreso antes de la respuesta.
+ * Las notificaciones del cliente, y los lotes que solo las contienen, se responden con 202.
+ *
+ * Escucha solo en loopback y pasa todo por MCPServer.dispatch, así varias sesiones
+ * comparten un mismo proceso con los analizadores, cachés y resultados ya calientes.
+ * Cada initialize recibe un Mcp-Session-Id; las cancelaciones se buscan dentro de esa sesión.
+ */
+final class HttpTransport {
+    static final String PATH = "/mcp";
+    private static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final String HTTP_SESSION = "http";
+
+    private final MCPServer server;
+
+    HttpTransport(MCPServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Arranca el servidor HTTP; sus hilos atienden las peticiones hasta que termina el proceso
+     */
+    void serve(int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.setExecutor(Executors.newFixedThreadPool(Config.getHttpWorkers(), MCPServer.daemonFactory("mcp-http-")));
+        http.createContext(PATH, this::handle);
+        http.start();
+        Log.info("🌐 Transporte HTTP en http://" + http.getAddress().getHostString() + ":"
+            + http.getAddress().getPort() + PATH + " (" + Config.getHttpWorkers() + " hilos)");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // Protección contra DNS rebinding: un navegador solo puede llegar desde una página local
+        if (!isLocalOrigin(exchange.getRequestHeaders().getFirst("Origin"))) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+        // Sin stream de servidor (GET) ni cierre explícito de sesión (DELETE)
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Log.debug(() -> "📥 Recibido (HTTP): " + Log.payload(body));
+
+        String session = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        boolean batch = MCPServer.isBatch(body);
+        List<MCPMessage> requests;
+        try {
+            requests = batch ? server.parseBatch(body)
+                             : Collections.singletonList(server.parseMessage(body));
+        } catch (IOException | RuntimeException e) {
+            Log.error("❌ Error procesando request: " + e.getMessage());
+            HttpChannel channel = new HttpChannel(exchange, false, false);
+            server.sendInternalError(channel, "error", e);
+            channel.close();
+            return;
+        }
+
+        if (requests.stream().anyMatch(request -> request != null && "initialize".equals(request.getMethod()))) {
+            session = UUID.randomUUID().toString();
+            exchange.getResponseHeaders().set(SESSION_HEADER, session);
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean eventStream = accept != null && accept.contains("text/event-stream")
+            && requests.stream().anyMatch(request -> request != null && "tools/call".equals(request.getMethod()));
+        if (session == null) {
+            session = HTTP_SESSION;
+        }
+
+        if (batch) {
+            // Un lote sin respuestas (solo notificaciones) se cierra con 202
+            server.dispatchBatch(requests, session, new HttpChannel(exchange, eventStream, false));
+        } else {
+            // Un mensaje que no es un objeto (null) recibe -32600 de dispatch
+            MCPMessage request = requests.get(0);
+            server.dispatch(request, session, new HttpChannel(exchange, eventStream, request != null && request.getId() == null));
+        }
+    }
+
+    private static boolean isLocalOrigin(String origin) {
+        if (origin == null) {
+            return true; // Clientes que no son navegadores
+        }
+        try {
+            String host = URI.create(origin).getHost();
+            return "localhost".equals(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Respuesta HTTP de un único mensaje. Las notificaciones de progreso solo se entregan
+     * como eventos SSE; la respuesta cierra el cuerpo. Escriben el hilo que atiende la
+     * petición, el de la herramienta y los de escaneo, de ahí la sincronización
+     */
+    private final class HttpChannel implements MCPServer.Channel {
+        private final HttpExchange exchange;
+        private final boolean eventStream;
+        private final boolean notification;
+        private Writer body;
+        private boolean closed;
+
+        HttpChannel(HttpExchange exchange, boolean eventStream, boolean notification) {
+            this.exchange = exchange;
+            this.eventStream = eventStream;
+            this.notification = notification;
+        }
+
+        @Override
+        public synchronized void send(Object message) {
+            // Las notificaciones del cliente no llevan respuesta
+            if (closed || notification) {
+                return;
+            }
+            try {
+                open();
+                if (eventStream) {
+                    body.write("event: message\ndata: ");
+                }
+                server.writeMessage(body, message);
+                if (eventStream) {
+                    body.write("\n\n");
+                }
+            } catch (IOException e) {
+                Log.warn("❌ Error escribiendo respuesta HTTP: " + e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public synchronized void notify(String json) {
+            if (closed || !eventStream) {
+                return;
+            }
+            try {
+                open();
+                body.write("event: message\ndata: " + json + "\n\n");
+                body.flush();
+            } catch (IOException e) {
+                Log.warn("❌ Error enviando progreso HTTP: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (body == null) {
+                    exchange.sendResponseHeaders(202, -1);
+                } else {
+                    body.close();
+                }
+            } catch (IOException e) {
+                Log.warn("❌ Error cerrando respuesta HTTP: " + e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void open() throws IOException {
+            if (body != null) {
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                eventStream ? "text/event-stream; charset=utf-8" : "application/json; charset=utf-8");
+            if (eventStream) {
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            }
+            exchange.sendResponseHeaders(200, 0);
+            body = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package org.example.mcp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Métricas de los métodos de un archivo Java en una sola pasada: sobre los tokens de
+ * SourceTokens, que separan el código de comentarios, strings, chars y text blocks, sigue
+ * llaves y paréntesis para reconocer dónde empieza y termina cada cuerpo de método.
+ * Por método calcula líneas, parámetros, complejidad ciclomática y anidamiento máximo.
+ *
+ * Recibe las líneas una a una y procesa cada char de código una sola vez, así el costo
+ * es lineal en el tamaño del archivo aunque haya métodos de miles de líneas. Como la
+ * sintaxis de Java es ASCII, acepta la línea sin decodificar (MappedLines.raw()): los
+ * chars >= 0x80 se tratan como parte de un identificador.
+ *
+ * Es una heurística de sintaxis, no un parser: un cuerpo de método es una llave que
+ * sigue a "nombre(...)", opcionalmente con throws, directamente dentro del cuerpo de
+ * una clase, interfaz, enum o clase anónima.
+ *
+ * No es thread-safe: una instancia por archivo.
+ */
+final class JavaMetrics {
+    private static final int TYPE = 0;
+    private static final int METHOD = 1;
+    private static final int BLOCK = 2;
+    private static final int ENUM = 3;        // cuerpo de enum mientras dura la lista de constantes
+
+    // Palabras que interesan al seguimiento de cabeceras
+    private static final int WORD = 0;
+    private static final int CONTROL = 1;     // if, for, while... antes de "(" no nombran un método
+    private static final int NEW = 2;
+    private static final int TYPE_DECLARATION = 3;
+    private static final int WILDCARD_BOUND = 4; // extends / super tras "?"
+    private static final int RECORD = 5;         // palabra clave solo si le sigue un nombre
+    private static final int ENUM_DECLARATION = 6;
+
+    /**
+     * Métricas de un método ya cerrado. La cabecera es la línea del paréntesis de sus
+     * parámetros: su rango en bytes, o su texto si el contenido no es byte a byte
+     */
+    static final class Method {
+        final int line;
+        final int codeStart;
+        final int codeEnd;
+        final String code;
+        final int parameters;
+        int lines;
+        int complexity = 1;
+        int maxNesting;
+        private final int depth;
+
+        private Method(int line, int codeStart, int codeEnd, String code, int parameters, int depth) {
+            this.line = line;
+            this.codeStart = codeStart;
+            this.codeEnd = codeEnd;
+            this.code = code;
+            this.parameters = parameters;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Estado del grupo de paréntesis abierto al entrar en una llave dentro de él, como
+     * un array en una anotación o una lambda en un argumento; se restaura al cerrarla
+     */
+    private static final class Group {
+        final int angles;
+        final int commas;
+        final boolean hasContent;
+        final boolean candidate;
+        final boolean anonymous;
+        final int line;
+        final int start;
+        final int end;
+        final CharSequence text;
+
+        private Group(JavaMetrics metrics) {
+            this.angles = metrics.angles;
+            this.commas = metrics.commas;
+            this.hasContent = metrics.groupHasContent;
+            this.candidate = metrics.groupCandidate;
+            this.anonymous = metrics.groupAnonymous;
+            this.line = metrics.groupLine;
+            this.start = metrics.groupStart;
+            this.end = metrics.groupEnd;
+            this.text = metrics.groupText;
+        }
+    }
+
+    private final List<Method> completed = new ArrayList<>();
+    private final List<Method> open = new ArrayList<>();
+    private int[] blocks = new int[16];
+    private int[] savedParens = new int[16];
+    private Group[] savedGroups = new Group[16];
+    private int depth;
+
+    private int lineNumber;
+    private int lineStart;
+    private int lineEnd;
+    private CharSequence lineText;
+
+    // Grupo de paréntesis de primer nivel: posible lista de parámetros
+    private int parens;
+    private int angles;
+    private int commas;
+    private boolean groupHasContent;
+    private boolean groupClosed;
+    private boolean groupCandidate;
+    private boolean groupAnonymous;
+    private int groupLine;
+    private int groupStart;
+    private int groupEnd;
+    private CharSequence groupText;
+    private int groupParameters;
+
+    private boolean lastWasWord;
+    private int lastWordKind;
+    private boolean afterDot;
+    private boolean afterNew;
+    private boolean typePending;
+    private boolean enumPending;
+    private boolean recordPending;
+    private boolean pendingQuestion;
+
+    /**
+     * Procesa la siguiente línea. lineStart/lineEnd son su rango en bytes dentro del
+     * archivo, o -1 si no se conoce; en ese caso se guarda el texto de las cabeceras.
+     * tokens son los del archivo completo, en las mismas unidades que line
+     */
+    void feed(CharSequence line, int lineNumber, int lineStart, int lineEnd, SourceTokens tokens) {
+        this.lineNumber = lineNumber;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.lineText = line;
+
+        int end = tokens.endRun(lineNumber);
+        for (int run = tokens.firstRun(lineNumber); run < end; run++) {
+            int from = tokens.runColumn(run);
+            int to = run + 1 < end ? tokens.runColumn(run + 1) : line.length();
+            switch (tokens.runScope(run)) {
+                case SourceTokens.CODE:
+                    code(line, from, Math.min(to, line.length()));
+                    break;
+                case SourceTokens.STRING:
+                    // Un literal que sigue en otras líneas cuenta igual una sola vez
+                    literal();
+                    break;
+                default:
+                    // Comentario
+            }
+        }
+    }
+
+    private void code(CharSequence line, int from, int to) {
+        int i = from;
+        // Un run de código que empieza con comilla empieza con la que cierra un literal
+        if (i < to && line.charAt(i) == '"') {
+            i += i + 2 < to && line.charAt(i + 1) == '"' && line.charAt(i + 2) == '"' ? 3 : 1;
+        } else if (i < to && line.charAt(i) == '\'') {
+            i++;
+        }
+
+        while (i < to) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                i++;
+            } else if (isIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < to && isIdentifierPart(line.charAt(end))) {
+                    end++;
+                }
+                word(line, i, end);
+                i = end;
+            } else if (c >= '0' && c <= '9') {
+                // Números, incluidos 0x1F, 1_000L y 1.5e10
+                int end = i + 1;
+                while (end < to && (isIdentifierPart(line.charAt(end)) || line.charAt(end) == '.')) {
+                    end++;
+                }
+                literal();
+                i = end;
+            } else if ((c == '&' || c == '|') && i + 1 < to && line.charAt(i + 1) == c) {
+                decision();
+                symbol(c);
+                i += 2;
+            } else {
+                symbol(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Métodos cerrados hasta ahora, en orden de cierre
+     */
+    List<Method> methods() {
+        return completed;
+    }
+
+    private void word(CharSequence line, int start, int end) {
+        int kind = classify(line, start, end);
+        if (pendingQuestion) {
+            // "? extends T" es un comodín de genéricos; cualquier otra palabra, un ternario
+            pendingQuestion = false;
+            if (kind != WILDCARD_BOUND) {
+                decision();
+            }
+        }
+        if (kind == CONTROL && isDecision(line, start, end)) {
+            decision();
+        }
+
+        if (parens > 0) {
+            groupHasContent = true;
+        } else if (kind == NEW) {
+            afterNew = true;
+        } else if ((kind == TYPE_DECLARATION || kind == ENUM_DECLARATION) && !afterDot) {
+            // "Foo.class" no declara nada
+            typePending = true;
+            enumPending = kind == ENUM_DECLARATION;
+        } else if (recordPending) {
+            typePending = true;
+            enumPending = false;
+        }
+        recordPending = kind == RECORD && parens == 0 && !afterDot;
+        lastWasWord = true;
+        lastWordKind = kind;
+        afterDot = false;
+    }
+
+    private void literal() {
+        if (pendingQuestion) {
+            pendingQuestion = false;
+            decision();
+        }
+        if (parens > 0) {
+            groupHasContent = true;
+        } else {
+            groupClosed = false;
+            afterNew = false;
+        }
+        lastWasWord = false;
+        afterDot = false;
+        recordPending = false;
+    }
+
+    private void symbol(char c) {
+        if (pendingQuestion && c != '>' && c != ',') {
+            decision();
+        }
+        pendingQuestion = false;
+
+        switch (c) {
+            case '(':
+                if (parens == 0) {
+                    // Nombre seguido de "(": lista de parámetros si luego viene una llave
+                    groupCandidate = lastWasWord && lastWordKind == WORD && !afterNew;
+                    groupAnonymous = afterNew;
+                    groupClosed = false;
+                    groupHasContent = false;
+                    commas = 0;
+                    angles = 0;
+                    groupLine = lineNumber;
+                    groupStart = lineStart;
+                    groupEnd = lineEnd;
+                    groupText = lineStart < 0 ? lineText : null;
+                } else {
+                    groupHasContent = true;
+                }
+                parens++;
+                break;
+            case ')':
+                if (parens > 0 && --parens == 0) {
+                    groupClosed = true;
+                    groupParameters = groupHasContent ? commas + 1 : 0;
+                }
+                break;
+            case ',':
+                if (parens == 1 && angles == 0) {
+                    commas++;
+                }
+                // Fuera de paréntesis: throws A, B o new Map<K, V>
+                break;
+            case '<':
+                if (parens == 1) {
+                    angles++;
+                } else if (parens == 0) {
+                    groupClosed = false;
+                }
+                break;
+            case '>':
+                if (parens == 1 && angles > 0) {
+                    angles--;
+                } else if (parens == 0) {
+                    groupClosed = false;
+                }
+                break;
+            case '.':
+                afterDot = true;
+                lastWasWord = false;
+                recordPending = false;
+                return;
+            case '?':
+                pendingQuestion = !open.isEmpty();
+                break;
+            case '[':
+            case ']':
+            case '@':
+                break;
+            case '{':
+                openBlock();
+                break;
+            case '}':
+                closeBlock();
+                break;
+            case ';':
+                if (parens == 0 && depth > 0 && blocks[depth - 1] == ENUM) {
+                    // Fin de las constantes: lo que sigue es un cuerpo de clase corriente
+                    blocks[depth - 1] = TYPE;
+                }
+                groupClosed = false;
+                typePending = false;
+                enumPending = false;
+                break;
+            default:
+                // '=', '-' de "->", operadores...: lo anterior no era una cabecera
+                if (parens > 0) {
+                    groupHasContent = true;
+                } else {
+                    groupClosed = false;
+                }
+        }
+        // Entre "new" y su "(" solo caben nombres calificados, genéricos y arrays
+        if (parens == 0 && c != '<' && c != '>' && c != '[' && c != ']' && c != ',' && c != '?') {
+            afterNew = false;
+        }
+        lastWasWord = false;
+        afterDot = false;
+        recordPending = false;
+    }
+
+    private void openBlock() {
+        int kind;
+        if (typePending) {
+            kind = enumPending ? ENUM : TYPE;
+        } else if ((groupClosed && groupAnonymous) || (parens == 0 && depth > 0 && blocks[depth - 1] == ENUM)) {
+            // Clase anónima, o cuerpo de una constante: "A {" o "A(1) {" entre las constantes
+            kind = TYPE;
+        } else if (groupClosed && groupCandidate && depth > 0 && blocks[depth - 1] == TYPE) {
+            kind = METHOD;
+        } else {
+            kind = BLOCK;
+        }
+
+        if (depth == blocks.length) {
+            blocks = Arrays.copyOf(blocks, depth * 2);
+            savedParens = Arrays.copyOf(savedParens, depth * 2);
+            savedGroups = Arrays.copyOf(savedGroups, depth * 2);
+        }
+        blocks[depth] = kind;
+        savedParens[depth] = parens;
+        savedGroups[depth] = parens > 0 ? new Group(this) : null;
+        depth++;
+
+        if (kind == METHOD) {
+            String code = groupText != null ? groupText.toString().trim() : null;
+            open.add(new Method(groupLine, groupStart, groupEnd, code, groupParameters, depth));
+        } else if (kind == BLOCK && !open.isEmpty()) {
+            Method method = open.get(open.size() - 1);
+            method.maxNesting = Math.max(method.maxNesting, depth - method.depth);
+        }
+
+        // Dentro de la llave empieza un contexto nuevo (lambda o clase anónima dentro de argumentos)
+        parens = 0;
+        groupClosed = false;
+        groupCandidate = false;
+        typePending = false;
+        enumPending = false;
+        afterNew = false;
+    }
+
+    private void closeBlock() {
+        if (depth == 0) {
+            return; // Llave desbalanceada: se ignora
+        }
+        depth--;
+        if (blocks[depth] == METHOD) {
+            Method method = open.remove(open.size() - 1);
+            method.lines = lineNumber - method.line + 1;
+            completed.add(method);
+        }
+        parens = savedParens[depth];
+        Group group = savedGroups[depth];
+        if (group != null) {
+            // La llave estaba dentro de paréntesis: el grupo sigue abierto como antes de ella
+            savedGroups[depth] = null;
+            angles = group.angles;
+            commas = group.commas;
+            groupHasContent = group.hasContent;
+            groupCandidate = group.candidate;
+            groupAnonymous = group.anonymous;
+            groupLine = group.line;
+            groupStart = group.start;
+            groupEnd = group.end;
+            groupText = group.text;
+        } else {
+            groupCandidate = false;
+        }
+        groupClosed = false;
+        typePending = false;
+        enumPending = false;
+    }
+
+    private void decision() {
+        if (!open.isEmpty()) {
+            open.get(open.size() - 1).complexity++;
+        }
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c >= 0x80;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static int classify(CharSequence line, int start, int end) {
+        switch (end - start) {
+            case 2:
+                return matches(line, start, "if") || matches(line, start, "do") ? CONTROL : WORD;
+            case 3:
+                if (matches(line, start, "for") || matches(line, start, "try")) {
+                    return CONTROL;
+                }
+                return matches(line, start, "new") ? NEW : WORD;
+            case 4:
+                if (matches(line, start, "case") || matches(line, start, "else")) {
+                    return CONTROL;
+                }
+                return matches(line, start, "enum") ? ENUM_DECLARATION : WORD;
+            case 5:
+                if (matches(line, start, "while") || matches(line, start, "catch")) {
+                    return CONTROL;
+                }
+                if (matches(line, start, "class")) {
+                    return TYPE_DECLARATION;
+                }
+                return matches(line, start, "super") ? WILDCARD_BOUND : WORD;
+            case 6:
+                if (matches(line, start, "switch")) {
+                    return CONTROL;
+                }
+                return matches(line, start, "record") ? RECORD : WORD;
+            case 7:
+                return matches(line, start, "extends") ? WILDCARD_BOUND : WORD;
+            case 9:
+                return matches(line, start, "interface") ? TYPE_DECLARATION : WORD;
+            case 12:
+                return matches(line, start, "synchronized") ? CONTROL : WORD;
+            default:
+                return WORD;
+        }
+    }
+
+    /**
+     * Puntos de decisión de McCabe: if, for, while, case y catch (además de &&, || y ?:)
+     */
+    private static boolean isDecision(CharSequence line, int start, int end) {
+        switch (end - start) {
+            case 2:
+                return line.charAt(start) == 'i';
+            case 3:
+                return line.charAt(start) == 'f';
+            case 4:
+                return line.charAt(start) == 'c';
+            case 5:
+                return true; // while, catch
+            default:
+                return false;
+        }
+    }
+
+    private static boolean matches(CharSequence line, int start, String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (line.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
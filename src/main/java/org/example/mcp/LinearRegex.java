@@ -0,0 +1,792 @@
+package org.example.mcp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluación en tiempo lineal de las expresiones regulares sin backreferences ni
+ * lookaround: el patrón se compila a un NFA de Thompson que se simula con una máquina
+ * de Pike, avanzando todos los hilos a la vez sobre la entrada. El costo es
+ * O(longitud de la línea × tamaño del patrón) para cualquier patrón y entrada, mientras
+ * que java.util.regex puede volverse exponencial con cuantificadores anidados.
+ *
+ * Solo informa dónde empieza la coincidencia más a la izquierda, igual que
+ * Matcher.find().start(), que es todo lo que necesitan las reglas; por eso codicioso y
+ * perezoso son equivalentes. Con las mismas reglas que Pattern por defecto: \w, \d y \s
+ * son ASCII, '.' no cruza terminadores de línea y ^/$ se refieren a toda la entrada.
+ *
+ * Como RegexLiterals, el análisis es conservador: ante lo que no entiende (lookaround,
+ * backreferences, flags, \Q...\E, \p{...}, cuantificadores posesivos) compile devuelve
+ * null y la regla sigue con java.util.regex. Es inmutable y puede compartirse entre hilos.
+ */
+final class LinearRegex {
+    // Instrucciones del programa
+    private static final int CHAR = 0;
+    private static final int ANY = 1;        // '.': cualquier code point salvo terminadores de línea
+    private static final int CLASS = 2;
+    private static final int SPLIT = 3;
+    private static final int JUMP = 4;
+    private static final int BEGIN = 5;      // ^
+    private static final int END = 6;        // $
+    private static final int WORD_BOUNDARY = 7;
+    private static final int NOT_WORD_BOUNDARY = 8;
+    private static final int MATCH = 9;
+
+    // Nodos del árbol sintáctico
+    private static final int NODE_ATOM = 0;  // una instrucción: carácter, clase o aserción
+    private static final int NODE_CONCAT = 1;
+    private static final int NODE_ALTERNATION = 2;
+    private static final int NODE_REPEAT = 3;
+
+    // Un {n,m} se expande copiando el nodo; por encima de esto se deja a java.util.regex
+    private static final int MAX_PROGRAM = 4096;
+    private static final int UNBOUNDED = -1;
+
+    private final int[] ops;
+    private final int[] args;       // code point de CHAR, índice de clase de CLASS, destinos de SPLIT/JUMP
+    private final int[] alternatives; // segundo destino de SPLIT
+    private final CharClass[] classes;
+    private final boolean anchored;   // toda coincidencia empieza con ^
+    private final CharClass first;    // code points con los que puede empezar una coincidencia, o null si cualquiera
+    private final ThreadLocal<Threads> scratch;
+
+    private LinearRegex(int[] ops, int[] args, int[] alternatives, CharClass[] classes, boolean anchored) {
+        this.ops = ops;
+        this.args = args;
+        this.alternatives = alternatives;
+        this.classes = classes;
+        this.anchored = anchored;
+        this.first = firstClass();
+        this.scratch = ThreadLocal.withInitial(() -> new Threads(ops.length));
+    }
+
+    /**
+     * Compila el patrón, o devuelve null si usa construcciones que requieren backtracking
+     * o que este motor no reproduce con exactitud
+     */
+    static LinearRegex compile(String regex) {
+        try {
+            Parser parser = new Parser(regex);
+            Node root = parser.parseAlternation();
+            if (parser.pos != regex.length()) {
+                return null; // ')' sin abrir
+            }
+            Emitter emitter = new Emitter();
+            emitter.emit(root);
+            emitter.add(MATCH, 0, 0);
+            return new LinearRegex(Arrays.copyOf(emitter.ops, emitter.size), Arrays.copyOf(emitter.args, emitter.size),
+                                   Arrays.copyOf(emitter.alternatives, emitter.size),
+                                   parser.classes.toArray(new CharClass[0]), isAnchored(root));
+        } catch (UnsupportedOperationException | IndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Inicio de la coincidencia más a la izquierda que empieza en from o después, o -1.
+     * Con scopes, solo cuentan las coincidencias que empiezan en uno de ruleScopes
+     */
+    int find(CharSequence input, int from, RuleEngine.ScopeResolver scopes, int ruleScopes) {
+        int length = input.length();
+        if (anchored && from > 0) {
+            return -1;
+        }
+        Threads threads = scratch.get();
+        Threads.ThreadList current = threads.current;
+        Threads.ThreadList next = threads.next;
+        current.clear();
+
+        int best = -1;
+        int i = from;
+        while (true) {
+            if (best < 0 && i <= length && (!anchored || i == 0)) {
+                if (current.size == 0 && first != null) {
+                    // Sin hilos vivos: saltar hasta un code point que pueda empezar una coincidencia
+                    while (i < length && !first.contains(Character.codePointAt(input, i))) {
+                        i += Character.charCount(Character.codePointAt(input, i));
+                    }
+                    if (i >= length) {
+                        return -1;
+                    }
+                }
+                if (scopes == null || (scopes.scopeAt(i) & ruleScopes) != 0) {
+                    // El hilo nuevo va último: los hilos quedan ordenados por su inicio
+                    add(threads, current, 0, i, i, input);
+                }
+            }
+            if (current.size == 0) {
+                if (best >= 0 || i >= length || anchored) {
+                    return best;
+                }
+                i += Character.charCount(Character.codePointAt(input, i));
+                continue;
+            }
+
+            int codePoint = i < length ? Character.codePointAt(input, i) : -1;
+            int after = i < length ? i + Character.charCount(codePoint) : length + 1;
+            next.clear();
+            for (int t = 0; t < current.size; t++) {
+                int pc = current.pcs[t];
+                int start = current.starts[pc];
+                switch (ops[pc]) {
+                    case MATCH:
+                        // Los hilos siguientes empezaron en o después de start
+                        best = start;
+                        t = current.size;
+                        break;
+                    case CHAR:
+                        if (codePoint == args[pc]) {
+                            add(threads, next, pc + 1, start, after, input);
+                        }
+                        break;
+                    case ANY:
+                        if (codePoint >= 0 && !isLineTerminator(codePoint)) {
+                            add(threads, next, pc + 1, start, after, input);
+                        }
+                        break;
+                    case CLASS:
+                        if (codePoint >= 0 && classes[args[pc]].contains(codePoint)) {
+                            add(threads, next, pc + 1, start, after, input);
+                        }
+                        break;
+                    default:
+                        // Saltos y aserciones ya se resolvieron al agregar el hilo
+                }
+            }
+            Threads.ThreadList swap = current;
+            current = next;
+            next = swap;
+            i = after;
+        }
+    }
+
+    /**
+     * Agrega el hilo y todos los que alcanza sin consumir entrada, resolviendo las
+     * aserciones en la posición position
+     */
+    private void add(Threads threads, Threads.ThreadList list, int pc, int start, int position, CharSequence input) {
+        int[] stack = threads.stack;
+        int top = 0;
+        stack[top++] = pc;
+        while (top > 0) {
+            int current = stack[--top];
+            if (list.contains(current)) {
+                continue;
+            }
+            list.add(current, start);
+            switch (ops[current]) {
+                case JUMP:
+                    stack[top++] = args[current];
+                    break;
+                case SPLIT:
+                    stack[top++] = alternatives[current];
+                    stack[top++] = args[current];
+                    break;
+                case BEGIN:
+                    if (position == 0) {
+                        stack[top++] = current + 1;
+                    }
+                    break;
+                case END:
+                    if (isEnd(input, position)) {
+                        stack[top++] = current + 1;
+                    }
+                    break;
+                case WORD_BOUNDARY:
+                case NOT_WORD_BOUNDARY:
+                    if (isBoundary(input, position) == (ops[current] == WORD_BOUNDARY)) {
+                        stack[top++] = current + 1;
+                    }
+                    break;
+                default:
+                    // Instrucciones que consumen entrada, o MATCH: quedan en la lista
+            }
+        }
+    }
+
+    /**
+     * $ sin MULTILINE: al final, o antes del terminador de línea con el que termina la entrada
+     */
+    private static boolean isEnd(CharSequence input, int position) {
+        int length = input.length();
+        if (position >= length) {
+            return true;
+        }
+        if (position == length - 2) {
+            return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+        }
+        return position == length - 1 && isLineTerminator(input.charAt(position))
+            && !(input.charAt(position) == '\n' && position > 0 && input.charAt(position - 1) == '\r');
+    }
+
+    private static boolean isBoundary(CharSequence input, int position) {
+        boolean before = position > 0 && isWord(Character.codePointBefore(input, position));
+        boolean after = position < input.length() && isWord(Character.codePointAt(input, position));
+        return before != after;
+    }
+
+    private static boolean isWord(int codePoint) {
+        return codePoint == '_' || Character.isLetterOrDigit(codePoint);
+    }
+
+    private static boolean isLineTerminator(int codePoint) {
+        return codePoint == '\n' || codePoint == '\r' || codePoint == 0x85 || codePoint == 0x2028 || codePoint == 0x2029;
+    }
+
+    private static boolean isAnchored(Node node) {
+        switch (node.kind) {
+            case NODE_ATOM:
+                return node.op == BEGIN;
+            case NODE_CONCAT:
+                return !node.children.isEmpty() && isAnchored(node.children.get(0));
+            case NODE_ALTERNATION:
+                for (Node child : node.children) {
+                    if (!isAnchored(child)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return node.min > 0 && isAnchored(node.children.get(0));
+        }
+    }
+
+    /**
+     * Unión de lo que pueden consumir los hilos iniciales; null si el patrón acepta la
+     * cadena vacía o empieza con '.', donde no hay nada que saltar
+     */
+    private CharClass firstClass() {
+        boolean[] seen = new boolean[ops.length];
+        int[] stack = new int[ops.length * 2 + 2];
+        int top = 0;
+        stack[top++] = 0;
+        CharClass union = new CharClass(new int[0]);
+        while (top > 0) {
+            int pc = stack[--top];
+            if (seen[pc]) {
+                continue;
+            }
+            seen[pc] = true;
+            switch (ops[pc]) {
+                case CHAR:
+                    union = union.union(CharClass.of(args[pc], args[pc]));
+                    break;
+                case CLASS:
+                    union = union.union(classes[args[pc]]);
+                    break;
+                case SPLIT:
+                    stack[top++] = alternatives[pc];
+                    stack[top++] = args[pc];
+                    break;
+                case JUMP:
+                    stack[top++] = args[pc];
+                    break;
+                case BEGIN:
+                case END:
+                case WORD_BOUNDARY:
+                case NOT_WORD_BOUNDARY:
+                    stack[top++] = pc + 1;
+                    break;
+                default:
+                    return null; // ANY o MATCH
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Listas de hilos de una búsqueda: conjuntos dispersos de pcs, con el inicio de la
+     * coincidencia de cada hilo. Una instancia por hilo de ejecución y patrón
+     */
+    private static final class Threads {
+        final ThreadList current;
+        final ThreadList next;
+        final int[] stack;
+
+        Threads(int size) {
+            current = new ThreadList(size);
+            next = new ThreadList(size);
+            stack = new int[size * 2 + 2];
+        }
+
+        static final class ThreadList {
+            final int[] pcs;
+            final int[] index;
+            final int[] starts;
+            int size;
+
+            ThreadList(int size) {
+                pcs = new int[size];
+                index = new int[size];
+                starts = new int[size];
+            }
+
+            boolean contains(int pc) {
+                int at = index[pc];
+                return at < size && pcs[at] == pc;
+            }
+
+            void add(int pc, int start) {
+                index[pc] = size;
+                pcs[size++] = pc;
+                starts[pc] = start;
+            }
+
+            void clear() {
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Conjunto de code points como rangos [desde, hasta] ordenados y disjuntos, con un
+     * mapa de bits para ASCII
+     */
+    static final class CharClass {
+        private static final int MAX = Character.MAX_CODE_POINT;
+        private final int[] ranges;
+        private final long low;
+        private final long high;
+
+        CharClass(int[] ranges) {
+            this.ranges = ranges;
+            long lowBits = 0;
+            long highBits = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int c = ranges[i]; c <= Math.min(ranges[i + 1], 127); c++) {
+                    if (c < 64) {
+                        lowBits |= 1L << c;
+                    } else {
+                        highBits |= 1L << (c - 64);
+                    }
+                }
+            }
+            this.low = lowBits;
+            this.high = highBits;
+        }
+
+        static CharClass of(int from, int to) {
+            return new CharClass(new int[] {from, to});
+        }
+
+        boolean contains(int codePoint) {
+            if (codePoint < 64) {
+                return (low & (1L << codePoint)) != 0;
+            }
+            if (codePoint < 128) {
+                return (high & (1L << (codePoint - 64))) != 0;
+            }
+            int lo = 0;
+            int hi = ranges.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (codePoint < ranges[2 * mid]) {
+                    hi = mid - 1;
+                } else if (codePoint > ranges[2 * mid + 1]) {
+                    lo = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CharClass union(CharClass other) {
+            int[] all = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+            System.arraycopy(other.ranges, 0, all, ranges.length, other.ranges.length);
+            // Ordenar los pares por su inicio y fusionar los que se tocan
+            Integer[] order = new Integer[all.length / 2];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(all[2 * a], all[2 * b]));
+            int[] merged = new int[all.length];
+            int size = 0;
+            for (int i : order) {
+                int from = all[2 * i];
+                int to = all[2 * i + 1];
+                if (size > 0 && from <= merged[size - 1] + 1) {
+                    merged[size - 1] = Math.max(merged[size - 1], to);
+                } else {
+                    merged[size++] = from;
+                    merged[size++] = to;
+                }
+            }
+            return new CharClass(Arrays.copyOf(merged, size));
+        }
+
+        CharClass complement() {
+            int[] result = new int[ranges.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    result[size++] = next;
+                    result[size++] = ranges[i] - 1;
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= MAX) {
+                result[size++] = next;
+                result[size++] = MAX;
+            }
+            return new CharClass(Arrays.copyOf(result, size));
+        }
+    }
+
+    private static final class Node {
+        final int kind;
+        final List<Node> children = new ArrayList<>(2);
+        int op;
+        int arg;
+        int min;
+        int max;
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        static Node atom(int op, int arg) {
+            Node node = new Node(NODE_ATOM);
+            node.op = op;
+            node.arg = arg;
+            return node;
+        }
+    }
+
+    private static final class Parser {
+        private static final CharClass DIGIT = CharClass.of('0', '9');
+        private static final CharClass WORD = new CharClass(new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+        private static final CharClass SPACE = new CharClass(new int[] {'\t', '\r', ' ', ' '});
+
+        private final String regex;
+        private final List<CharClass> classes = new ArrayList<>();
+        private int pos;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parseAlternation() {
+            Node first = parseSequence();
+            if (pos >= regex.length() || regex.charAt(pos) != '|') {
+                return first;
+            }
+            Node alternation = new Node(NODE_ALTERNATION);
+            alternation.children.add(first);
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                pos++;
+                alternation.children.add(parseSequence());
+            }
+            return alternation;
+        }
+
+        private Node parseSequence() {
+            Node sequence = new Node(NODE_CONCAT);
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                sequence.children.add(parseQuantifier(parseAtom()));
+            }
+            return sequence;
+        }
+
+        private Node parseQuantifier(Node atom) {
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                int min;
+                int max;
+                if (c == '*') {
+                    min = 0;
+                    max = UNBOUNDED;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = UNBOUNDED;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{') {
+                    int close = regex.indexOf('}', pos);
+                    if (close < 0) {
+                        throw new UnsupportedOperationException("{ sin cerrar");
+                    }
+                    String bounds = regex.substring(pos + 1, close);
+                    int comma = bounds.indexOf(',');
+                    min = Integer.parseInt(comma < 0 ? bounds : bounds.substring(0, comma));
+                    max = comma < 0 ? min
+                        : comma == bounds.length() - 1 ? UNBOUNDED : Integer.parseInt(bounds.substring(comma + 1));
+                    if (min < 0 || (max != UNBOUNDED && max < min)) {
+                        throw new UnsupportedOperationException("repetición inválida");
+                    }
+                    pos = close + 1;
+                } else {
+                    return atom;
+                }
+                // Perezoso da el mismo inicio que codicioso; posesivo puede no coincidir donde este sí
+                if (pos < regex.length() && regex.charAt(pos) == '+') {
+                    throw new UnsupportedOperationException("cuantificador posesivo");
+                }
+                if (pos < regex.length() && regex.charAt(pos) == '?') {
+                    pos++;
+                }
+                Node repeat = new Node(NODE_REPEAT);
+                repeat.children.add(atom);
+                repeat.min = min;
+                repeat.max = max;
+                atom = repeat;
+            }
+            return atom;
+        }
+
+        private Node parseAtom() {
+            char c = regex.charAt(pos);
+            switch (c) {
+                case '(':
+                    pos++;
+                    if (regex.charAt(pos) == '?') {
+                        // Solo grupos sin captura; lookaround, flags y grupos con nombre no
+                        if (regex.charAt(pos + 1) != ':') {
+                            throw new UnsupportedOperationException("grupo especial");
+                        }
+                        pos += 2;
+                    }
+                    Node group = parseAlternation();
+                    if (regex.charAt(pos) != ')') {
+                        throw new UnsupportedOperationException("grupo sin cerrar");
+                    }
+                    pos++;
+                    return group;
+                case '[':
+                    return Node.atom(CLASS, addClass(parseClass()));
+                case '.':
+                    pos++;
+                    return Node.atom(ANY, 0);
+                case '^':
+                    pos++;
+                    return Node.atom(BEGIN, 0);
+                case '$':
+                    pos++;
+                    return Node.atom(END, 0);
+                case '\\':
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedOperationException("cuantificador sin operando");
+                default:
+                    int codePoint = regex.codePointAt(pos);
+                    pos += Character.charCount(codePoint);
+                    return Node.atom(CHAR, codePoint);
+            }
+        }
+
+        private Node parseEscape() {
+            char c = regex.charAt(pos + 1);
+            switch (c) {
+                case 'b':
+                    pos += 2;
+                    return Node.atom(WORD_BOUNDARY, 0);
+                case 'B':
+                    pos += 2;
+                    return Node.atom(NOT_WORD_BOUNDARY, 0);
+                case 'd':
+                case 'D':
+                case 'w':
+                case 'W':
+                case 's':
+                case 'S':
+                    pos += 2;
+                    return Node.atom(CLASS, addClass(predefined(c)));
+                default:
+                    return Node.atom(CHAR, escapedChar());
+            }
+        }
+
+        private CharClass parseClass() {
+            pos++; // [
+            boolean negated = pos < regex.length() && regex.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+            if (regex.charAt(pos) == ']') {
+                throw new UnsupportedOperationException("clase vacía");
+            }
+            CharClass set = new CharClass(new int[0]);
+            while (regex.charAt(pos) != ']') {
+                char c = regex.charAt(pos);
+                if (c == '[' || (c == '&' && regex.charAt(pos + 1) == '&')) {
+                    throw new UnsupportedOperationException("unión o intersección de clases");
+                }
+                if (c == '\\' && "dDwWsS".indexOf(regex.charAt(pos + 1)) >= 0) {
+                    set = set.union(predefined(regex.charAt(pos + 1)));
+                    pos += 2;
+                    continue;
+                }
+                int from = classChar();
+                int to = from;
+                if (regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    if (regex.charAt(pos) == '[' || (regex.charAt(pos) == '\\'
+                            && "dDwWsS".indexOf(regex.charAt(pos + 1)) >= 0)) {
+                        throw new UnsupportedOperationException("rango con clase");
+                    }
+                    to = classChar();
+                    if (to < from) {
+                        throw new UnsupportedOperationException("rango invertido");
+                    }
+                }
+                set = set.union(CharClass.of(from, to));
+            }
+            pos++; // ]
+            return negated ? set.complement() : set;
+        }
+
+        private int classChar() {
+            if (regex.charAt(pos) == '\\') {
+                return escapedChar();
+            }
+            int codePoint = regex.codePointAt(pos);
+            pos += Character.charCount(codePoint);
+            return codePoint;
+        }
+
+        /**
+         * Escape de un solo carácter: \t, \n... o un símbolo escapado (\. \( \/ ...)
+         */
+        private int escapedChar() {
+            char c = regex.charAt(pos + 1);
+            pos += 2;
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                default:
+                    // Letras y dígitos escapados tienen significado propio (\1, \p, \Q, \x...)
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedOperationException("escape \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private static CharClass predefined(char c) {
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return DIGIT.complement();
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return WORD.complement();
+                case 's':
+                    return SPACE;
+                default:
+                    return SPACE.complement();
+            }
+        }
+
+        private int addClass(CharClass set) {
+            classes.add(set);
+            return classes.size() - 1;
+        }
+    }
+
+    private static final class Emitter {
+        int[] ops = new int[64];
+        int[] args = new int[64];
+        int[] alternatives = new int[64];
+        int size;
+
+        int add(int op, int arg, int alternative) {
+            if (size == MAX_PROGRAM) {
+                throw new UnsupportedOperationException("patrón demasiado grande");
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                alternatives = Arrays.copyOf(alternatives, size * 2);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            alternatives[size] = alternative;
+            return size++;
+        }
+
+        void emit(Node node) {
+            switch (node.kind) {
+                case NODE_ATOM:
+                    add(node.op, node.arg, 0);
+                    break;
+                case NODE_CONCAT:
+                    for (Node child : node.children) {
+                        emit(child);
+                    }
+                    break;
+                case NODE_ALTERNATION:
+                    emitAlternation(node.children, 0);
+                    break;
+                default:
+                    emitRepeat(node.children.get(0), node.min, node.max);
+            }
+        }
+
+        /**
+         * a|b|c como SPLIT(a, SPLIT(b, c)), cada rama salta al final
+         */
+        private void emitAlternation(List<Node> branches, int from) {
+            if (from == branches.size() - 1) {
+                emit(branches.get(from));
+                return;
+            }
+            int split = add(SPLIT, 0, 0);
+            args[split] = size;
+            emit(branches.get(from));
+            int jump = add(JUMP, 0, 0);
+            alternatives[split] = size;
+            emitAlternation(branches, from + 1);
+            args[jump] = size;
+        }
+
+        private void emitRepeat(Node child, int min, int max) {
+            for (int i = 0; i < min; i++) {
+                emit(child);
+            }
+            if (max == UNBOUNDED) {
+                // x*: L: SPLIT(cuerpo, fin); cuerpo; JUMP L
+                int split = add(SPLIT, 0, 0);
+                args[split] = size;
+                emit(child);
+                add(JUMP, split, 0);
+                alternatives[split] = size;
+                return;
+            }
+            // x{0,k}: k opcionales anidados, cada uno salta al final si no coincide
+            int[] splits = new int[max - min];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = add(SPLIT, 0, 0);
+                args[splits[i]] = size;
+                emit(child);
+            }
+            for (int split : splits) {
+                alternatives[split] = size;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.mcp;
+
+import java.io.PrintStream;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Log por niveles hacia stderr. Los mensajes se encolan en un buffer acotado y
+ * un único hilo los escribe, así ningún hilo de trabajo se bloquea en el pipe de
+ * stderr; si el buffer se llena, los mensajes nuevos se descartan y se informa
+ * cuántos al reanudar.
+ *
+ * El nivel sale de Config.getLogLevel() (MCP_LOG_LEVEL). En INFO solo se registran
+ * ids, métodos, duraciones y tamaños; los payloads aparecen en DEBUG, recortados a
+ * Config.getLogPayloadMax() caracteres, y completos en TRACE.
+ */
+final class Log {
+    enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static final Level LEVEL = parseLevel(Config.getLogLevel());
+    private static final int PAYLOAD_MAX = Config.getLogPayloadMax();
+    private static final BlockingQueue<String> BUFFER = new ArrayBlockingQueue<>(Config.getLogBufferSize());
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final PrintStream OUT = System.err;
+
+    static {
+        Thread appender = new Thread(Log::appendLoop, "mcp-log");
+        appender.setDaemon(true);
+        appender.start();
+        // Lo que quede en el buffer al salir se escribe igualmente
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "mcp-log-flush"));
+    }
+
+    private Log() {}
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            System.err.println("Warning: MCP_LOG_LEVEL inválido: " + value);
+            return Level.INFO;
+        }
+    }
+
+    static Level getLevel() {
+        return LEVEL;
+    }
+
+    static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) <= 0;
+    }
+
+    static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    /**
+     * El mensaje solo se construye si DEBUG está activo
+     */
+    static void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, message.get());
+        }
+    }
+
+    /**
+     * Payload para el log: completo en TRACE, recortado en el resto de niveles
+     */
+    static String payload(String text) {
+        if (text == null || isEnabled(Level.TRACE) || text.length() <= PAYLOAD_MAX) {
+            return text;
+        }
+        return text.substring(0, PAYLOAD_MAX) + "… (" + text.length() + " caracteres)";
+    }
+
+    private static void log(Level level, String message) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        String line = LocalTime.now().format(TIME) + " " + level + " [" + Thread.currentThread().getName() + "] " + message;
+        if (!BUFFER.offer(line)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    private static void appendLoop() {
+        List<String> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(BUFFER.take());
+                BUFFER.drainTo(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized void write(List<String> batch) {
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            OUT.println("⚠️ " + dropped + " mensajes de log descartados (buffer lleno)");
+        }
+        for (String line : batch) {
+            OUT.println(line);
+        }
+        OUT.flush();
+    }
+
+    private static void drain() {
+        List<String> batch = new ArrayList<>();
+        BUFFER.drainTo(batch);
+        write(batch);
+    }
+}
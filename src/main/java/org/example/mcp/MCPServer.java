@@ -1,21 +1,42 @@
 package org.example.mcp;
 
 import org.example.mcp.model.*;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MCPServer {
+    private static final Object END_OF_OUTPUT = new Object();
+    private static final String STDIO_SESSION = "stdio";
+    
     private final ObjectMapper objectMapper;
     private final Map<String, Tool> tools;
     private final SecurityAnalyzer securityAnalyzer;
     private final PolicyAnalyzer policyAnalyzer;
+    private final ResultStore results;
+    private final ResultCache resultCache;
+    private final Map<List<Object>, CancellationToken> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService toolExecutor =
+        Executors.newFixedThreadPool(Config.getRequestWorkers(), daemonFactory("mcp-tool-"));
+    // Escaneos compartidos entre llamadas idénticas; las llamadas solo los esperan
+    private final ExecutorService scanExecutor = Executors.newCachedThreadPool(daemonFactory("mcp-scan-"));
+    private final SingleFlight<Report> toolFlights = new SingleFlight<>(scanExecutor);
 
     public MCPServer() {
         this.objectMapper = new ObjectMapper();
         this.tools = new HashMap<>();
-        this.securityAnalyzer = new SecurityAnalyzer();
-        this.policyAnalyzer = new PolicyAnalyzer();
+        this.results = new ResultStore(Config.getResultsMaxBytes(), Config.getResultsPageSize());
+        this.securityAnalyzer = new SecurityAnalyzer(results);
+        this.policyAnalyzer = new PolicyAnalyzer(results);
+        this.resultCache = new ResultCache(Config.getResultCacheMaxBytes(), results::touchReferenced);
         initializeTools();
     }
 
@@ -26,6 +47,8 @@ public class MCPServer {
         pathProp.put("type", "string");
         pathProp.put("description", "Path del repositorio a escanear (o 'auto' para búsqueda automática)");
         secProps.put("repo_path", pathProp);
+        addChangeScopeProperties(secProps);
+        addBudgetProperties(secProps);
         
         Map<String, Object> securitySchema = new HashMap<>();
         securitySchema.put("type", "object");
@@ -46,6 +69,8 @@ public class MCPServer {
         codePathProp.put("type", "string");
         codePathProp.put("description", "Path del archivo o repositorio a analizar");
         policyProps.put("code_path", codePathProp);
+        addChangeScopeProperties(policyProps);
+        addBudgetProperties(policyProps);
         
         Map<String, Object> policySchema = new HashMap<>();
         policySchema.put("type", "object");
@@ -59,50 +84,655 @@ public class MCPServer {
                 "Analiza código para verificar cumplimiento de políticas de desarrollo",
                 policySchema
         ));
+
+        // Perfil de las reglas de ambos analizadores
+        Map<String, Object> statsProps = new HashMap<>();
+        Map<String, Object> resetProp = new HashMap<>();
+        resetProp.put("type", "boolean");
+        resetProp.put("description", "Poner los contadores en cero después de leerlos");
+        statsProps.put("reset", resetProp);
+        
+        Map<String, Object> statsSchema = new HashMap<>();
+        statsSchema.put("type", "object");
+        statsSchema.put("properties", statsProps);
+
+        tools.put("rule_stats", new Tool(
+                "rule_stats",
+                "Muestra por regla evaluaciones, coincidencias, tiempo y caracteres examinados, de mayor a menor costo",
+                statsSchema
+        ));
+    }
+
+    /**
+     * Argumentos opcionales para analizar solo los archivos modificados según git
+     */
+    private void addChangeScopeProperties(Map<String, Object> properties) {
+        Map<String, Object> baseRefProp = new HashMap<>();
+        baseRefProp.put("type", "string");
+        baseRefProp.put("description", "Rama, tag o commit de referencia: solo se analizan los archivos añadidos o modificados respecto a ella");
+        properties.put("base_ref", baseRefProp);
+        
+        Map<String, Object> stagedOnlyProp = new HashMap<>();
+        stagedOnlyProp.put("type", "boolean");
+        stagedOnlyProp.put("description", "Analizar solo los archivos en staging, con el contenido del index de git");
+        properties.put("staged_only", stagedOnlyProp);
+    }
+
+    /**
+     * Argumentos opcionales de presupuesto por llamada y cursor para continuar un escaneo parcial
+     */
+    private void addBudgetProperties(Map<String, Object> properties) {
+        Map<String, Object> cursorProp = new HashMap<>();
+        cursorProp.put("type", "string");
+        cursorProp.put("description", "Cursor devuelto por un escaneo parcial anterior para continuar desde donde se detuvo");
+        properties.put("cursor", cursorProp);
+        
+        Map<String, Object> budgetMsProp = new HashMap<>();
+        budgetMsProp.put("type", "integer");
+        budgetMsProp.put("description", "Presupuesto de tiempo de esta llamada en milisegundos");
+        properties.put("budget_ms", budgetMsProp);
+        
+        Map<String, Object> budgetBytesProp = new HashMap<>();
+        budgetBytesProp.put("type", "integer");
+        budgetBytesProp.put("description", "Presupuesto de bytes a leer en esta llamada");
+        properties.put("budget_bytes", budgetBytesProp);
+        
+        Map<String, Object> maxFindingsProp = new HashMap<>();
+        maxFindingsProp.put("type", "integer");
+        maxFindingsProp.put("description", "Presupuesto de hallazgos de esta llamada");
+        properties.put("max_findings", maxFindingsProp);
     }
 
     public void start() {
-        System.err.println("🚀 MCP Server iniciando...");
+        Log.info("🚀 MCP Server iniciando (log " + Log.getLevel() + ")");
         
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"))) {
+        try {
+            serve(System.in, System.out, STDIO_SESSION, "mcp-writer");
+        } catch (IOException e) {
+            Log.error("❌ Error de I/O: " + e.getMessage());
+        } finally {
+            toolExecutor.shutdown();
+            scanExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Atiende una conexión de mensajes JSON por línea (stdio o un socket) hasta su EOF.
+     * Antes de cerrar la salida espera a que terminen las llamadas en curso, así un
+     * cliente que cierra su entrada sigue recibiendo las respuestas pendientes
+     */
+    void serve(InputStream input, OutputStream output, String session, String writerName) throws IOException {
+        LineChannel channel = new LineChannel();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"))) {
+            Thread writerThread = new Thread(() -> writeLoop(channel.outbox, writer), writerName);
+            writerThread.start();
             
-            String line;
-            while ((line = reader.readLine()) != null) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String received = line;
+                    Log.debug(() -> "📥 Recibido: " + Log.payload(received));
+                    try {
+                        if (isBatch(line)) {
+                            List<MCPMessage> batch = parseBatch(line);
+                            channel.begin();
+                            dispatchBatch(batch, session, channel);
+                        } else {
+                            MCPMessage request = parseMessage(line);
+                            channel.begin();
+                            dispatch(request, session, channel);
+                        }
+                    } catch (IOException e) {
+                        Log.error("❌ Error procesando request: " + e.getMessage());
+                        sendInternalError(channel, "error", e);
+                    } catch (RuntimeException e) {
+                        // Un mensaje que falla no debe cerrar la sesión: las siguientes líneas se siguen atendiendo
+                        Log.error("❌ Error inesperado procesando request: " + e);
+                        sendInternalError(channel, "error", e);
+                    }
+                }
+            } finally {
                 try {
-                    System.err.println("📥 Recibido: " + line);
-                    
-                    MCPMessage request = objectMapper.readValue(line, MCPMessage.class);
-                    MCPResponse response = handleRequest(request);
-                    
-                    String responseJson = objectMapper.writeValueAsString(response);
-                    System.err.println("📤 Enviando: " + responseJson);
-                    
-                    writer.write(responseJson);
-                    writer.newLine();
-                    writer.flush();
-                    
-                } catch (Exception e) {
-                    System.err.println("❌ Error procesando request: " + e.getMessage());
-                    MCPResponse errorResponse = new MCPResponse("error");
-                    errorResponse.setError(new MCPError(-32603, "Internal error: " + e.getMessage()));
-                    
+                    channel.awaitIdle();
+                    channel.outbox.add(END_OF_OUTPUT);
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Canal de una conexión por líneas: los mensajes se encolan para su hilo escritor y
+     * se cuentan las peticiones que aún no terminaron
+     */
+    private static final class LineChannel implements Channel {
+        final BlockingQueue<Object> outbox = new LinkedBlockingQueue<>();
+        private int pending;
+        
+        @Override
+        public void send(Object message) {
+            outbox.add(message);
+        }
+        
+        synchronized void begin() {
+            pending++;
+        }
+        
+        @Override
+        public synchronized void close() {
+            pending--;
+            notifyAll();
+        }
+        
+        synchronized void awaitIdle() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Salida de una conexión: la cola de stdout o de un socket, o una respuesta HTTP. Recibe JSON ya
+     * serializado, un ToolResult, que se escribe en streaming con writeToolResult, o la
+     * lista de respuestas de un lote (ver writeMessage)
+     */
+    interface Channel {
+        void send(Object message);
+        
+        /**
+         * Notificaciones (progreso); un canal que no puede entregarlas las descarta
+         */
+        default void notify(String json) {
+            send(json);
+        }
+        
+        /**
+         * La petición terminó: ya se envió su respuesta, o no la tendrá (notificación o cancelada)
+         */
+        default void close() {
+        }
+    }
+
+    /**
+     * Atiende una petición ya parseada, de cualquier transporte. tools/call se ejecuta en
+     * el pool de herramientas; initialize, tools/list y el resto de métodos de protocolo se
+     * responden en el hilo que llama, sin quedar en cola detrás de un escaneo largo. Las
+     * respuestas pueden salir en otro orden que las peticiones: el cliente las correlaciona
+     * por id. Las cancelaciones se buscan por sesión, así dos clientes pueden usar los mismos ids.
+     */
+    void dispatch(MCPMessage request, String session, Channel channel) {
+        if (request != null && "tools/call".equals(request.getMethod())) {
+            CancellationToken cancellation = new CancellationToken();
+            List<Object> key = request.getId() != null ? Arrays.asList(session, requestKey(request.getId())) : null;
+            if (key != null) {
+                inFlight.put(key, cancellation);
+            }
+            try {
+                toolExecutor.execute(() -> {
                     try {
-                        String errorJson = objectMapper.writeValueAsString(errorResponse);
-                        writer.write(errorJson);
-                        writer.newLine();
-                        writer.flush();
-                    } catch (Exception ex) {
-                        System.err.println("❌ Error enviando error response: " + ex.getMessage());
+                        respond(request, cancellation, channel);
+                    } finally {
+                        if (key != null) {
+                            inFlight.remove(key, cancellation);
+                        }
+                        channel.close();
                     }
+                });
+            } catch (RuntimeException e) {
+                // Pool apagado o saturado: se responde el error y el canal no queda esperando
+                if (key != null) {
+                    inFlight.remove(key, cancellation);
+                }
+                Log.error("❌ Error encolando " + describe(request) + ": " + e);
+                sendInternalError(channel, request.getId() != null ? request.getId() : "error", e);
+                channel.close();
+            }
+            return;
+        }
+        // El error se envía antes de cerrar el canal: en un lote, el cierre del último miembro envía el array
+        try {
+            if (request == null) {
+                sendInvalidRequest(channel, "message is not a JSON object");
+            } else if ("notifications/cancelled".equals(request.getMethod())) {
+                handleCancelled(session, request.getParams());
+            } else {
+                respond(request, CancellationToken.NONE, channel);
+            }
+        } catch (RuntimeException e) {
+            Log.error("❌ Error inesperado procesando " + describe(request) + ": " + e);
+            sendInternalError(channel, request.getId() != null ? request.getId() : "error", e);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * ¿El mensaje es un lote JSON-RPC (un array) en lugar de un objeto?
+     */
+    static boolean isBatch(String json) {
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '[';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mensaje suelto; null si no es un objeto JSON (p.ej. la línea "null" o un número),
+     * que dispatch responde con -32600
+     */
+    MCPMessage parseMessage(String json) throws IOException {
+        JsonNode message = objectMapper.readTree(json);
+        return message != null && message.isObject() ? objectMapper.treeToValue(message, MCPMessage.class) : null;
+    }
+
+    /**
+     * Miembros de un lote, en orden; null en los que no son una petición válida, que
+     * reciben su propio error sin invalidar el resto
+     */
+    List<MCPMessage> parseBatch(String json) throws IOException {
+        JsonNode batch = objectMapper.readTree(json);
+        List<MCPMessage> members = new ArrayList<>(batch.size());
+        for (JsonNode member : batch) {
+            MCPMessage request = null;
+            if (member.isObject()) {
+                try {
+                    request = objectMapper.treeToValue(member, MCPMessage.class);
+                } catch (IOException e) {
+                    Log.warn("❌ Miembro de lote inválido: " + e.getMessage());
+                }
+            }
+            members.add(request);
+        }
+        return members;
+    }
+
+    /**
+     * Atiende un lote JSON-RPC: cada miembro pasa por dispatch como una petición suelta,
+     * así los tools/call se ejecutan en paralelo en el pool de herramientas y se pueden
+     * cancelar por id. Las respuestas se juntan en un único array en el orden de las
+     * peticiones, sin las notificaciones ni las canceladas; si no queda ninguna no se
+     * envía nada. El progreso de cada miembro sale antes, como notificación aparte.
+     */
+    void dispatchBatch(List<MCPMessage> members, String session, Channel channel) {
+        if (members.isEmpty()) {
+            sendInvalidRequest(channel, "empty batch");
+            channel.close();
+            return;
+        }
+        Batch batch = new Batch(members.size(), channel);
+        for (int i = 0; i < members.size(); i++) {
+            MCPMessage request = members.get(i);
+            Channel member = batch.member(i, request != null && request.getId() == null);
+            if (request == null) {
+                sendInvalidRequest(member, "batch member is not a valid request");
+                member.close();
+            } else {
+                dispatch(request, session, member);
+            }
+        }
+    }
+
+    /**
+     * Respuestas de un lote en curso: cada miembro escribe en su posición y el último en
+     * terminar envía el array al canal de la conexión
+     */
+    private static final class Batch {
+        private final Object[] responses;
+        private final Channel channel;
+        private final long started = System.nanoTime();
+        private int remaining;
+
+        Batch(int size, Channel channel) {
+            this.responses = new Object[size];
+            this.channel = channel;
+            this.remaining = size;
+        }
+
+        /**
+         * Canal de un miembro; el de una notificación descarta su respuesta
+         */
+        Channel member(int index, boolean notification) {
+            return new Channel() {
+                @Override
+                public void send(Object message) {
+                    if (notification) {
+                        return;
+                    }
+                    synchronized (Batch.this) {
+                        responses[index] = message;
+                    }
+                }
+
+                @Override
+                public void notify(String json) {
+                    channel.notify(json);
+                }
+
+                @Override
+                public void close() {
+                    done();
+                }
+            };
+        }
+
+        private void done() {
+            List<Object> answered = new ArrayList<>(responses.length);
+            synchronized (this) {
+                if (--remaining > 0) {
+                    return;
+                }
+                for (Object response : responses) {
+                    if (response != null) {
+                        answered.add(response);
+                    }
+                }
+            }
+            Log.info("📦 Lote de " + responses.length + " mensajes " + elapsedMillis(started) + " ms, "
+                + answered.size() + " respuestas");
+            if (!answered.isEmpty()) {
+                channel.send(answered);
+            }
+            channel.close();
+        }
+    }
+
+    private void respond(MCPMessage request, CancellationToken cancellation, Channel channel) {
+        if (cancellation.isCancelled()) {
+            return; // Cancelada mientras esperaba en cola
+        }
+        long started = System.nanoTime();
+        try {
+            if ("tools/call".equals(request.getMethod())) {
+                Report report = handleToolCall(request.getParams(), cancellation, channel);
+                if (cancellation.isCancelled()) {
+                    Log.info("🚫 " + describe(request) + " cancelada tras " + elapsedMillis(started) + " ms, sin respuesta");
+                    return;
+                }
+                // El texto se genera al escribirlo, directamente sobre la salida del canal
+                channel.send(new ToolResult(request.getId() != null ? request.getId() : "unknown",
+                                          report, describe(request), started));
+                return;
+            }
+            
+            MCPResponse response = handleRequest(request, cancellation);
+            
+            // El cliente ya abandonó la petición: no espera respuesta
+            if (cancellation.isCancelled()) {
+                Log.info("🚫 " + describe(request) + " cancelada tras " + elapsedMillis(started) + " ms, sin respuesta");
+                return;
+            }
+            
+            String responseJson = objectMapper.writeValueAsString(response);
+            Log.debug(() -> "📤 Enviando: " + Log.payload(responseJson));
+            Log.info("📤 " + describe(request) + " " + elapsedMillis(started) + " ms, "
+                + responseJson.length() + " caracteres");
+            
+            channel.send(responseJson);
+            
+        } catch (Exception e) {
+            Log.error("❌ Error procesando " + describe(request) + ": " + e.getMessage());
+            sendInternalError(channel, request.getId() != null ? request.getId() : "error", e);
+        }
+    }
+
+    /**
+     * Resumen de la petición para el log: método, herramienta e id, sin argumentos
+     */
+    @SuppressWarnings("unchecked")
+    private static String describe(MCPMessage request) {
+        StringBuilder summary = new StringBuilder(String.valueOf(request.getMethod()));
+        if (request.getParams() instanceof Map) {
+            Object name = ((Map<String, Object>) request.getParams()).get("name");
+            if (name != null) {
+                summary.append(" ").append(name);
+            }
+        }
+        return summary.append(" id=").append(request.getId()).toString();
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return (System.nanoTime() - startedNanos) / 1_000_000;
+    }
+
+    /**
+     * notifications/cancelled: detiene la llamada en curso con ese requestId. Las que ya
+     * terminaron o no existen se ignoran, como indica el protocolo
+     */
+    @SuppressWarnings("unchecked")
+    private void handleCancelled(String session, Object params) {
+        if (!(params instanceof Map)) {
+            return;
+        }
+        Object requestId = ((Map<String, Object>) params).get("requestId");
+        CancellationToken cancellation = requestId != null ? inFlight.get(Arrays.asList(session, requestKey(requestId))) : null;
+        if (cancellation != null) {
+            Log.info("🚫 Cancelando id=" + requestId + ": " + ((Map<String, Object>) params).get("reason"));
+            cancellation.cancel();
+        }
+    }
+
+    /**
+     * Los ids numéricos pueden llegar como Integer o Long según su valor
+     */
+    private static Object requestKey(Object id) {
+        return id instanceof Number ? (Object) ((Number) id).longValue() : id;
+    }
+
+    void sendInternalError(Channel channel, Object id, Exception e) {
+        MCPResponse errorResponse = new MCPResponse(id);
+        errorResponse.setError(new MCPError(-32603, "Internal error: " + e.getMessage()));
+        
+        try {
+            String errorJson = objectMapper.writeValueAsString(errorResponse);
+            channel.send(errorJson);
+        } catch (Exception ex) {
+            Log.error("❌ Error enviando error response: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * -32600 con id null, como pide JSON-RPC cuando no se puede leer el id de la petición
+     */
+    private void sendInvalidRequest(Channel channel, String reason) {
+        Map<String, Object> errorResponse = new LinkedHashMap<>();
+        errorResponse.put("jsonrpc", "2.0");
+        errorResponse.put("id", null);
+        errorResponse.put("error", new MCPError(-32600, "Invalid Request: " + reason));
+        
+        try {
+            channel.send(objectMapper.writeValueAsString(errorResponse));
+        } catch (Exception ex) {
+            Log.error("❌ Error enviando error response: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Resultado de tools/call pendiente de escribir: el análisis ya terminó, pero el
+     * texto del reporte se genera al escribir la respuesta
+     */
+    static final class ToolResult {
+        final Object id;
+        final Report report;
+        final String description;
+        final long startedNanos;
+        
+        ToolResult(Object id, Report report, String description, long startedNanos) {
+            this.id = id;
+            this.report = report;
+            this.description = description;
+            this.startedNanos = startedNanos;
+        }
+    }
+
+    /**
+     * Único hilo que escribe en la salida de una conexión: cada mensaje sale completo en su
+     * propia línea. La cola la llenan el hilo lector, los hilos de herramientas y los de
+     * escaneo (progreso).
+     * Solo vacía el buffer cuando la cola queda vacía, así una ráfaga de notificaciones
+     * y respuestas sale en una sola escritura
+     */
+    private void writeLoop(BlockingQueue<Object> outbox, BufferedWriter writer) {
+        try {
+            while (true) {
+                Object message = outbox.take();
+                if (message == END_OF_OUTPUT) {
+                    break;
+                }
+                writeMessage(writer, message);
+                writer.newLine();
+                if (outbox.isEmpty()) {
+                    writer.flush();
                 }
             }
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
-            System.err.println("❌ Error de I/O: " + e.getMessage());
+            Log.error("❌ Error escribiendo la salida: " + e.getMessage());
         }
     }
 
-    private MCPResponse handleRequest(MCPMessage request) {
+    /**
+     * Escribe un mensaje recibido por Channel.send: JSON ya serializado, un ToolResult o
+     * la lista de respuestas de un lote, que sale como array con cada reporte en streaming
+     */
+    void writeMessage(Writer writer, Object message) throws IOException {
+        if (message instanceof ToolResult) {
+            writeToolResult(writer, (ToolResult) message);
+        } else if (message instanceof List) {
+            writer.write('[');
+            List<?> responses = (List<?>) message;
+            for (int i = 0; i < responses.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeMessage(writer, responses.get(i));
+            }
+            writer.write(']');
+        } else {
+            writer.write((String) message);
+        }
+    }
+
+    /**
+     * Escribe la respuesta de tools/call con JsonGenerator sobre la salida del canal. El reporte se
+     * escribe pieza a pieza dentro de content[0].text, escapando cada fragmento, así la
+     * memoria por respuesta queda acotada por los buffers y no por el tamaño del reporte.
+     * Si el reporte falla a mitad de camino, el error se agrega al texto y el JSON se
+     * cierra igualmente
+     */
+    void writeToolResult(Writer writer, ToolResult result) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM); // writeLoop decide cuándo vaciar
+        
+        generator.writeStartObject();
+        generator.writeStringField("jsonrpc", "2.0");
+        generator.writeFieldName("id");
+        generator.writeObject(result.id);
+        generator.writeObjectFieldStart("result");
+        generator.writeArrayFieldStart("content");
+        generator.writeStartObject();
+        generator.writeStringField("type", "text");
+        generator.writeFieldName("text");
+        generator.writeRawValue("\"");
+        
+        JsonTextWriter text = new JsonTextWriter(generator);
+        try {
+            result.report.writeTo(text);
+        } catch (RuntimeException e) {
+            Log.error("❌ Error generando el reporte de " + result.description + ": " + e.getMessage());
+            text.write("\n❌ Error generando el reporte: " + e.getMessage());
+        }
+        
+        generator.writeRaw('"');
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+        
+        Log.info("📤 " + result.description + " " + elapsedMillis(result.startedNanos) + " ms, "
+            + text.length + " caracteres");
+    }
+
+    /**
+     * Writer que escribe en el generador el texto recibido escapado como contenido de un
+     * string JSON; las comillas de apertura y cierre las escribe writeToolResult
+     */
+    private static final class JsonTextWriter extends Writer {
+        private final JsonGenerator generator;
+        private final StringBuilder escaped = new StringBuilder();
+        private long length;
+        
+        JsonTextWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+        
+        @Override
+        public void write(String text) throws IOException {
+            writeEscaped(text);
+        }
+        
+        @Override
+        public void write(char[] buffer, int offset, int count) throws IOException {
+            writeEscaped(CharBuffer.wrap(buffer, offset, count));
+        }
+        
+        private void writeEscaped(CharSequence chunk) throws IOException {
+            escaped.setLength(0);
+            JsonStringEncoder.getInstance().quoteAsString(chunk, escaped);
+            generator.writeRaw(escaped.toString());
+            length += chunk.length();
+        }
+        
+        @Override
+        public void flush() {
+            // writeLoop vacía stdout
+        }
+        
+        @Override
+        public void close() {
+            // El generador lo cierra writeToolResult
+        }
+    }
+
+    static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Envía notifications/progress con el estado del escaneo asociado al progressToken
+     */
+    private void sendProgress(Channel channel, Object progressToken, ScanProgress progress) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("progressToken", progressToken);
+        params.put("progress", progress.getFilesScanned());
+        long total = progress.getTotal();
+        if (total >= 0) {
+            params.put("total", total);
+        }
+        params.put("message", progress.toString());
+        
+        try {
+            channel.notify(objectMapper.writeValueAsString(new MCPMessage(null, "notifications/progress", params)));
+        } catch (IOException e) {
+            Log.warn("❌ Error enviando progreso: " + e.getMessage());
+        }
+    }
+
+    private MCPResponse handleRequest(MCPMessage request, CancellationToken cancellation) {
         Object requestId = request.getId() != null ? request.getId() : "unknown";
         MCPResponse response = new MCPResponse(requestId);
 
@@ -113,27 +743,25 @@ public class MCPServer {
                 return response;
             }
             
-            System.err.println("🔧 Procesando método: " + method);
-            
             switch (method) {
                 case "initialize":
-                    System.err.println("✅ Inicializando...");
                     response.setResult(handleInitialize());
                     break;
                 case "tools/list":
-                    System.err.println("📋 Listando herramientas...");
                     response.setResult(handleToolsList());
                     break;
-                case "tools/call":
-                    System.err.println("🛠️ Ejecutando herramienta...");
-                    response.setResult(handleToolCall(request.getParams()));
+                case "resources/list":
+                    handleResourcesList(request.getParams(), response);
+                    break;
+                case "resources/read":
+                    handleResourcesRead(request.getParams(), response);
                     break;
                 default:
-                    System.err.println("❌ Método no soportado: " + method);
+                    Log.warn("❌ Método no soportado: " + method);
                     response.setError(new MCPError(-32601, "Method not found: " + method));
             }
         } catch (Exception e) {
-            System.err.println("❌ Error en handleRequest: " + e.getMessage());
+            Log.error("❌ Error en handleRequest: " + e.getMessage());
             response.setError(new MCPError(-32603, "Internal error: " + e.getMessage()));
         }
         
@@ -146,6 +774,7 @@ public class MCPServer {
         
         Map<String, Object> capabilities = new HashMap<>();
         capabilities.put("tools", new HashMap<>());
+        capabilities.put("resources", new HashMap<>());
         result.put("capabilities", capabilities);
         
         Map<String, Object> serverInfo = new HashMap<>();
@@ -157,8 +786,6 @@ public class MCPServer {
     }
 
     private Map<String, Object> handleToolsList() {
-        System.err.println("📋 Preparando lista de herramientas...");
-        
         Map<String, Object> result = new HashMap<>();
         List<Map<String, Object>> toolsList = new ArrayList<>();
         
@@ -168,27 +795,62 @@ public class MCPServer {
             toolMap.put("description", tool.getDescription());
             toolMap.put("inputSchema", tool.getInputSchema());
             toolsList.add(toolMap);
-            System.err.println("➕ Agregada herramienta: " + tool.getName());
         }
         
         result.put("tools", toolsList);
-        System.err.println("✅ Retornando " + toolsList.size() + " herramientas");
         return result;
     }
 
+    /**
+     * resources/list: páginas de los resultados guardados, paginadas con cursor
+     */
     @SuppressWarnings("unchecked")
-    private Map<String, Object> handleToolCall(Object params) {
-        Map<String, Object> result = new HashMap<>();
+    private void handleResourcesList(Object params, MCPResponse response) {
+        Object cursor = params instanceof Map ? ((Map<String, Object>) params).get("cursor") : null;
+        try {
+            response.setResult(results.list(cursor != null ? cursor.toString() : null));
+        } catch (IllegalArgumentException e) {
+            response.setError(new MCPError(-32602, "Invalid params: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * resources/read: formatea la página pedida de un resultado guardado
+     */
+    @SuppressWarnings("unchecked")
+    private void handleResourcesRead(Object params, MCPResponse response) {
+        Object uri = params instanceof Map ? ((Map<String, Object>) params).get("uri") : null;
+        if (uri == null) {
+            response.setError(new MCPError(-32602, "Invalid params: uri is required"));
+            return;
+        }
+        String text;
+        try {
+            text = results.read(uri.toString());
+        } catch (IllegalArgumentException e) {
+            response.setError(new MCPError(-32602, "Invalid params: " + e.getMessage()));
+            return;
+        }
+        if (text == null) {
+            // Resultado inexistente o ya descartado por el LRU: hay que repetir el escaneo
+            response.setError(new MCPError(-32002, "Resource not found: " + uri));
+            return;
+        }
         
+        Map<String, Object> content = new HashMap<>();
+        content.put("uri", uri.toString());
+        content.put("mimeType", "text/plain");
+        content.put("text", text);
+        Map<String, Object> result = new HashMap<>();
+        result.put("contents", Collections.singletonList(content));
+        response.setResult(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Report handleToolCall(Object params, CancellationToken cancellation, Channel channel) {
         try {
             if (!(params instanceof Map)) {
-                List<Map<String, Object>> content = new ArrayList<>();
-                Map<String, Object> textContent = new HashMap<>();
-                textContent.put("type", "text");
-                textContent.put("text", "❌ Error: Parámetros inválidos");
-                content.add(textContent);
-                result.put("content", content);
-                return result;
+                return Report.text("❌ Error: Parámetros inválidos");
             }
             
             Map<String, Object> paramsMap = (Map<String, Object>) params;
@@ -196,67 +858,238 @@ public class MCPServer {
             Map<String, Object> arguments = (Map<String, Object>) paramsMap.get("arguments");
             
             if (toolName == null) {
-                List<Map<String, Object>> content = new ArrayList<>();
-                Map<String, Object> textContent = new HashMap<>();
-                textContent.put("type", "text");
-                textContent.put("text", "❌ Error: Nombre de herramienta requerido");
-                content.add(textContent);
-                result.put("content", content);
-                return result;
+                return Report.text("❌ Error: Nombre de herramienta requerido");
             }
             
             if (arguments == null) {
                 arguments = new HashMap<>();
             }
             
-            System.err.println("🛠️ Ejecutando herramienta: " + toolName + " con argumentos: " + arguments);
+            Map<String, Object> toolArguments = arguments;
+            Log.debug(() -> "🛠️ Ejecutando herramienta: " + toolName + " con argumentos: "
+                + Log.payload(String.valueOf(toolArguments)));
             
-            String toolResult = executeTool(toolName, arguments);
+            // Progreso solo si el cliente lo pidió con _meta.progressToken
+            ScanProgress.Listener progressListener = null;
+            Object meta = paramsMap.get("_meta");
+            if (meta instanceof Map && ((Map<String, Object>) meta).get("progressToken") != null) {
+                Object progressToken = ((Map<String, Object>) meta).get("progressToken");
+                progressListener = state -> {
+                    if (!cancellation.isCancelled()) {
+                        sendProgress(channel, progressToken, state);
+                    }
+                };
+            }
             
-            // Crear el content como un array con un objeto de texto
-            List<Map<String, Object>> content = new ArrayList<>();
-            Map<String, Object> textContent = new HashMap<>();
-            textContent.put("type", "text");
-            textContent.put("text", toolResult);
-            content.add(textContent);
-            result.put("content", content);
+            Path root = toolRoot(toolName, arguments);
+            String toolKey = root != null && Files.isDirectory(root) ? toolKey(toolName, arguments, root) : null;
+            if (toolKey == null) {
+                ScanProgress progress = progressListener != null ? ScanProgress.reportingTo(progressListener) : ScanProgress.NONE;
+                return executeTool(toolName, arguments, createScheduler(arguments), progress, cancellation);
+            }
             
+            // Mismo reporte si nada de lo que leyó una llamada idéntica cambió desde entonces
+            boolean cacheable = Config.getResultCacheMaxBytes() > 0;
+            if (cacheable) {
+                String cached = resultCache.get(toolKey);
+                Log.info("💾 Caché de reportes " + (cached != null ? "hit" : "miss") + " (" + resultCache.describe() + ")");
+                if (cached != null) {
+                    return Report.text(cached);
+                }
+            }
+            
+            // Las llamadas idénticas que lleguen mientras tanto esperan este mismo escaneo
+            return toolFlights.execute(toolKey, cancellation, progressListener, (shared, progress) -> {
+                ScanScheduler scheduler = createScheduler(toolArguments);
+                ResultCache.Snapshot snapshot = cacheable ? snapshotOf(root, toolArguments, scheduler) : null;
+                long timeouts = RuleEngine.getTimeoutCount();
+                Report report = executeTool(toolName, toolArguments, scheduler, progress, shared);
+                
+                // Los escaneos parciales y los que abortaron reglas por tiempo dependen de la carga:
+                // no se reutilizan. El contador es global, así que un timeout de otra llamada
+                // simultánea también evita guardar este reporte
+                if (snapshot != null && !scheduler.isTruncated() && !shared.isCancelled()
+                        && RuleEngine.getTimeoutCount() == timeouts) {
+                    report = resultCache.recording(toolKey, snapshot, report);
+                }
+                return report;
+            });
+            
+        } catch (CancellationException e) {
+            // respond() no envía nada para una llamada cancelada
+            Log.debug(() -> "🚫 Herramienta cancelada: " + e.getMessage());
+            return Report.text("🚫 " + e.getMessage());
         } catch (Exception e) {
-            System.err.println("❌ Error ejecutando herramienta: " + e.getMessage());
-            List<Map<String, Object>> content = new ArrayList<>();
-            Map<String, Object> textContent = new HashMap<>();
-            textContent.put("type", "text");
-            textContent.put("text", "❌ Error ejecutando herramienta: " + e.getMessage());
-            content.add(textContent);
-            result.put("content", content);
+            Log.error("❌ Error ejecutando herramienta: " + e.getMessage());
+            return Report.text("❌ Error ejecutando herramienta: " + e.getMessage());
         }
-        
-        return result;
     }
 
-    private String executeTool(String toolName, Map<String, Object> arguments) {
-        System.err.println("🔍 Ejecutando: " + toolName);
-        
+    private Report executeTool(String toolName, Map<String, Object> arguments, ScanScheduler scheduler,
+                               ScanProgress progress, CancellationToken cancellation) {
+        // Las herramientas en curso a la vez (p.ej. las de un lote) comparten los tokens de sus archivos
+        SourceTokens.Scope tokens = SourceTokens.openScope();
+        try {
+            return runTool(toolName, arguments, scheduler, progress, cancellation);
+        } finally {
+            tokens.close();
+        }
+    }
+
+    private Report runTool(String toolName, Map<String, Object> arguments, ScanScheduler scheduler,
+                           ScanProgress progress, CancellationToken cancellation) {
         switch (toolName) {
             case "scan_repo":
                 String repoPath = (String) arguments.get("repo_path");
                 if (repoPath == null) {
-                    return "❌ Error: repo_path es requerido";
+                    return Report.text("❌ Error: repo_path es requerido");
                 }
-                System.err.println("🔍 Escaneando repositorio: " + repoPath);
-                return securityAnalyzer.scanRepository(repoPath);
+                return securityAnalyzer.scan(repoPath, getBaseRef(arguments), isStagedOnly(arguments),
+                        scheduler, progress, cancellation);
                 
             case "analyze_policies":
                 String codePath = (String) arguments.get("code_path");
                 if (codePath == null) {
-                    return "❌ Error: code_path es requerido";
+                    return Report.text("❌ Error: code_path es requerido");
                 }
-                System.err.println("📋 Analizando políticas: " + codePath);
-                return policyAnalyzer.analyzeRepository(codePath);
+                return policyAnalyzer.analyze(codePath, getBaseRef(arguments), isStagedOnly(arguments),
+                        scheduler, progress, cancellation);
                 
+            case "rule_stats":
+                Object reset = arguments.get("reset");
+                return ruleStats(reset != null && Boolean.parseBoolean(reset.toString()));
+                
+            default:
+                return Report.text("❌ Herramienta desconocida: " + toolName);
+        }
+    }
+
+    /**
+     * Contadores de las reglas de seguridad y de políticas, la más costosa primero
+     */
+    private Report ruleStats(boolean reset) {
+        List<RuleEngine.RuleStats> stats = new ArrayList<>(securityAnalyzer.getRuleStats(reset));
+        stats.addAll(policyAnalyzer.getRuleStats(reset));
+        stats.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+
+        long evaluations = 0;
+        long nanos = 0;
+        for (RuleEngine.RuleStats rule : stats) {
+            evaluations += rule.evaluations;
+            nanos += rule.nanos;
+        }
+        StringBuilder out = new StringBuilder();
+        out.append("📊 ESTADÍSTICAS DE REGLAS (por tiempo total)\n");
+        out.append("Reglas: ").append(stats.size()).append(", evaluaciones: ").append(evaluations)
+           .append(", tiempo: ").append(String.format(Locale.ROOT, "%.1f", nanos / 1e6)).append(" ms\n");
+        if (reset) {
+            out.append("🔄 Contadores reiniciados\n");
+        }
+        out.append("\n");
+        int position = 0;
+        for (RuleEngine.RuleStats rule : stats) {
+            out.append(String.format(Locale.ROOT, "%3d. %s %s [%s] %s\n", ++position, rule.rule, rule.language,
+                    rule.owner, rule.linear ? "lineal" : "backtracking"));
+            if (rule.evaluations == 0) {
+                out.append("     Sin evaluaciones\n");
+                continue;
+            }
+            // Caracteres por nanosegundo × 1000 = millones de caracteres por segundo
+            out.append(String.format(Locale.ROOT,
+                    "     Evaluaciones: %d | Coincidencias: %d (%.1f%%) | Tiempo: %.2f ms (%d ns/eval) | Caracteres: %d (%.1f M/s)",
+                    rule.evaluations, rule.matches, 100.0 * rule.matches / rule.evaluations, rule.nanos / 1e6,
+                    rule.nanos / rule.evaluations, rule.characters,
+                    rule.nanos > 0 ? rule.characters * 1000.0 / rule.nanos : 0.0));
+            if (rule.timeouts > 0) {
+                out.append(" | Timeouts: ").append(rule.timeouts);
+            }
+            out.append("\n");
+        }
+        return Report.text(out.toString());
+    }
+
+    /**
+     * Identifica una llamada para la caché de reportes y para agrupar llamadas idénticas:
+     * herramienta y argumentos ordenados, con el path ya resuelto
+     */
+    private String toolKey(String toolName, Map<String, Object> arguments, Path root) {
+        Map<String, String> normalized = new TreeMap<>();
+        for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+            if (argument.getValue() != null) {
+                normalized.put(argument.getKey(), argument.getValue().toString().trim());
+            }
+        }
+        normalized.put(pathArgument(toolName), root.toString());
+        return toolName + normalized;
+    }
+
+    /**
+     * Directorio que analizará la herramienta, resuelto igual que en su analizador; null con 'auto'
+     */
+    private Path toolRoot(String toolName, Map<String, Object> arguments) {
+        Object path = arguments.get(pathArgument(toolName));
+        if (path == null || path.toString().trim().isEmpty() || "auto".equals(path)) {
+            return null;
+        }
+        switch (toolName) {
+            case "scan_repo":
+                return securityAnalyzer.resolvePath(path.toString());
+            case "analyze_policies":
+                return policyAnalyzer.resolvePath(path.toString());
             default:
-                return "❌ Herramienta desconocida: " + toolName;
+                return null;
+        }
+    }
+
+    /**
+     * Lo que hay que volver a comprobar antes de reutilizar el reporte: lo que lea el
+     * recorrido del escaneo o, con staged_only, el estado de git. Con base_ref sobre el
+     * working tree cualquier archivo versionado puede entrar en el diff sin que cambie
+     * nada de lo leído, así que no se cachea (null)
+     */
+    private ResultCache.Snapshot snapshotOf(Path root, Map<String, Object> arguments, ScanScheduler scheduler) {
+        if (isStagedOnly(arguments)) {
+            return ResultCache.Snapshot.ofGitState(root);
+        }
+        return getBaseRef(arguments) == null ? scheduler.recordSnapshot() : null;
+    }
+
+    private static String pathArgument(String toolName) {
+        return "analyze_policies".equals(toolName) ? "code_path" : "repo_path";
+    }
+
+    private String getBaseRef(Map<String, Object> arguments) {
+        Object baseRef = arguments.get("base_ref");
+        return baseRef == null || baseRef.toString().trim().isEmpty() ? null : baseRef.toString().trim();
+    }
+
+    private boolean isStagedOnly(Map<String, Object> arguments) {
+        Object stagedOnly = arguments.get("staged_only");
+        return stagedOnly != null && Boolean.parseBoolean(stagedOnly.toString());
+    }
+
+    private ScanScheduler createScheduler(Map<String, Object> arguments) {
+        Object cursor = arguments.get("cursor");
+        return ScanScheduler.create(
+            getLong(arguments, "budget_ms"),
+            getLong(arguments, "budget_bytes"),
+            getLong(arguments, "max_findings"),
+            cursor != null ? cursor.toString() : null);
+    }
+
+    private Long getLong(Map<String, Object> arguments, String name) {
+        Object value = arguments.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null && !value.toString().trim().isEmpty()) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " debe ser un número entero: " + value);
+            }
         }
+        return null;
     }
 
     private String evaluateExpression(String expression) {
@@ -294,7 +1127,53 @@ public class MCPServer {
         }
     }
 
+    /**
+     * Sirve por HTTP en localhost en lugar de stdio; el proceso sigue activo hasta que se detiene
+     */
+    public void startHttp(int port) {
+        Log.info("🚀 MCP Server iniciando en modo HTTP (log " + Log.getLevel() + ")");
+        try {
+            new HttpTransport(this).serve(port);
+        } catch (IOException e) {
+            Log.error("❌ No se pudo iniciar el transporte HTTP en el puerto " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Daemon sobre socket Unix: atiende sesiones hasta que se detiene el proceso
+     */
+    public void startDaemon(Path socket) {
+        Log.info("🚀 MCP Server iniciando como daemon (log " + Log.getLevel() + ")");
+        try {
+            new UnixSocketTransport(this).serve(socket);
+        } catch (IOException e) {
+            Log.error("❌ No se pudo iniciar el daemon en " + socket + ": " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
-        new MCPServer().start();
+        List<String> options = Arrays.asList(args);
+        if (options.contains("--connect")) {
+            // Shim hacia el daemon; sin daemon, la sesión se atiende en este proceso
+            try {
+                if (UnixSocketTransport.relay(Config.getDaemonSocket())) {
+                    return;
+                }
+            } catch (IOException e) {
+                Log.error("❌ Conexión con el daemon perdida: " + e.getMessage());
+                return;
+            }
+            new MCPServer().start();
+            return;
+        }
+        
+        MCPServer server = new MCPServer();
+        if (options.contains("--daemon")) {
+            server.startDaemon(Config.getDaemonSocket());
+        } else if (Config.getHttpPort() > 0) {
+            server.startHttp(Config.getHttpPort());
+        } else {
+            server.start();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,403 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cursor de líneas sobre el contenido crudo de un archivo. Los límites de línea se
+ * buscan sobre los bytes crudos y cada línea solo se decodifica a String cuando
+ * alguien la pide (normalmente, cuando pasó el prefiltro de literales).
+ * Para charsets donde '\n' no es siempre el byte 0x0A se decodifica el archivo
+ * completo y se recorre como antes.
+ *
+ * Solo los archivos grandes se mapean en memoria: un mapeo vive hasta que lo libera
+ * el GC y en Windows impide guardar o borrar el archivo, y para un fuente chico cuesta
+ * más que leerlo. Los demás se leen en un buffer de heap que release() devuelve a un pool.
+ *
+ * No es thread-safe: cada archivo se recorre desde un solo hilo.
+ */
+final class MappedLines {
+    // Buffers de heap de Config.getMmapMinBytes() bytes, devueltos por release()
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    private static final int MAX_POOLED = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ByteBuffer buffer;
+    private final Charset charset;
+    private final boolean byteLevel;
+    private final boolean fileBacked;
+    private final int limit;           // fin del último contenido que no sea '\n'
+    private final String decoded;
+    private final String[] decodedLines;
+    private String contentHash;
+
+    private int lineNumber;
+    private int lineStart;
+    private int lineEnd = -1;
+    private String text;
+    private byte[] scratch = new byte[256];
+    private final RawLine raw = new RawLine();
+    private byte[] pooled;
+
+    private MappedLines(ByteBuffer buffer, Charset charset, boolean fileBacked) {
+        this.buffer = buffer;
+        this.charset = charset;
+        this.fileBacked = fileBacked;
+        this.byteLevel = supportsByteScanning(charset);
+
+        if (byteLevel) {
+            // Igual que String.split("\n"): las líneas vacías finales no cuentan
+            int end = buffer.limit();
+            while (end > 0 && buffer.get(end - 1) == '\n') {
+                end--;
+            }
+            this.limit = end;
+            this.decoded = null;
+            this.decodedLines = null;
+        } else {
+            this.limit = buffer.limit();
+            this.decoded = charset.decode(buffer.duplicate()).toString();
+            this.decodedLines = decoded.split("\n");
+        }
+    }
+
+    /**
+     * Carga el archivo completo, de modo que el I/O ocurra aquí y no durante el matching:
+     * desde Config.getMmapMinBytes() lo mapea y precarga sus páginas, y por debajo lo lee
+     * en un buffer del pool. Quien termina de usarlo llama a release()
+     */
+    static MappedLines map(Path file, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new MappedLines(ByteBuffer.allocate(0), charset, true);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archivo demasiado grande para mapear: " + file);
+            }
+            int threshold = Config.getMmapMinBytes();
+            if (size >= threshold) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mapped.load();
+                return new MappedLines(mapped, charset, true);
+            }
+
+            byte[] array = POOL.poll();
+            if (array != null) {
+                POOLED.decrementAndGet();
+            }
+            if (array == null || array.length < size) {
+                array = new byte[threshold];
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(array, 0, (int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // Leer hasta completar el tamaño (o hasta el EOF si el archivo se acortó)
+            }
+            buffer.flip();
+            MappedLines lines = new MappedLines(buffer, charset, true);
+            lines.pooled = array;
+            return lines;
+        }
+    }
+
+    /**
+     * Devuelve al pool el buffer de un archivo leído en heap. Después de llamarlo este
+     * cursor y lo que se obtuvo de él (raw(), rawContent()) ya no se pueden usar
+     */
+    void release() {
+        byte[] array = pooled;
+        if (array == null) {
+            return;
+        }
+        pooled = null;
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(array);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Memoria que retendrá un archivo de size bytes una vez cargado con map(): el
+     * buffer del pool completo si es chico, el mapeo si no
+     */
+    static long residentSize(long size) {
+        int threshold = Config.getMmapMinBytes();
+        return size > 0 && size < threshold ? threshold : size;
+    }
+
+    /**
+     * Memoria que retiene este contenido hasta release()
+     */
+    long residentBytes() {
+        byte[] array = pooled;
+        return array != null ? array.length : size();
+    }
+
+    static MappedLines wrap(byte[] content, Charset charset) {
+        return new MappedLines(ByteBuffer.wrap(content), charset, false);
+    }
+
+    /**
+     * Si el contenido es el del archivo en disco, de modo que los offsets de línea
+     * sirven para releerlo más tarde
+     */
+    boolean isFileBacked() {
+        return fileBacked;
+    }
+
+    /**
+     * Charsets en los que se puede buscar '\n' y los literales directamente sobre los bytes
+     */
+    static boolean supportsByteScanning(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Tamaño del archivo en bytes
+     */
+    int size() {
+        return buffer.limit();
+    }
+
+    /**
+     * Charset con el que se decodifica el contenido
+     */
+    Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Hash SHA-256 (hex) del contenido completo del archivo; se calcula una sola vez
+     */
+    String contentHash() {
+        if (contentHash == null) {
+            contentHash = computeContentHash();
+        }
+        return contentHash;
+    }
+
+    private String computeContentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer.duplicate());
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Avanza a la siguiente línea; devuelve false al llegar al final
+     */
+    boolean next() {
+        text = null;
+        if (!byteLevel) {
+            if (lineNumber >= decodedLines.length) {
+                return false;
+            }
+            text = decodedLines[lineNumber++];
+            return true;
+        }
+
+        if (lineEnd >= limit && lineNumber > 0) {
+            return false;
+        }
+        if (limit == 0) {
+            // Archivo vacío: una única línea vacía, como "".split("\n"); solo saltos de línea: ninguna
+            if (lineNumber > 0 || buffer.limit() > 0) {
+                return false;
+            }
+            lineNumber = 1;
+            lineStart = 0;
+            lineEnd = 0;
+            return true;
+        }
+
+        lineStart = lineNumber == 0 ? 0 : lineEnd + 1;
+        int end = lineStart;
+        while (end < limit && buffer.get(end) != '\n') {
+            end++;
+        }
+        lineEnd = end;
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Número de la línea actual (base 1)
+     */
+    int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Offset en bytes del inicio de la línea actual
+     */
+    int lineStart() {
+        return byteLevel ? lineStart : -1;
+    }
+
+    /**
+     * Offset en bytes del fin (exclusivo) de la línea actual
+     */
+    int lineEnd() {
+        return byteLevel ? lineEnd : -1;
+    }
+
+    /**
+     * Longitud de la línea en bytes; nunca es menor que su longitud en caracteres
+     */
+    int byteLength() {
+        return byteLevel ? lineEnd - lineStart : text.length();
+    }
+
+    /**
+     * Reglas candidatas para la línea actual sin decodificarla, o null si ninguna aplica
+     */
+    <R extends RuleEngine.Rule> long[] candidates(RuleEngine.CompiledRuleSet<R> rules) {
+        return byteLevel
+                ? rules.candidates(buffer, lineStart, lineEnd, charset)
+                : rules.candidates(text);
+    }
+
+    /**
+     * Línea actual sin decodificar, un char por byte (los no ASCII quedan >= 0x80), para
+     * quien solo mira la sintaxis ASCII. Es una vista reutilizada: vale hasta el próximo
+     * next(). Sin escaneo por bytes devuelve el texto decodificado
+     */
+    CharSequence raw() {
+        return byteLevel ? raw : text;
+    }
+
+    /**
+     * Contenido completo en las mismas unidades que raw(): un char por byte, o el texto
+     * decodificado si no hay escaneo por bytes
+     */
+    CharSequence rawContent() {
+        return byteLevel ? new RawRange(0, buffer.limit()) : decoded;
+    }
+
+    /**
+     * Longitud en unidades de raw() del tramo [from, to) de text(); con from = 0, la
+     * posición de raw() equivalente a to
+     */
+    int rawLength(CharSequence text, int from, int to) {
+        if (!byteLevel || !charset.equals(StandardCharsets.UTF_8)) {
+            return to - from;
+        }
+        int bytes = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 2; // Cada mitad del par: 4 bytes en total
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Texto decodificado del rango [start, end) en bytes, p.ej. de una línea ya pasada
+     */
+    String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Texto decodificado de la línea actual
+     */
+    String text() {
+        if (text == null) {
+            int length = lineEnd - lineStart;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(lineStart);
+            view.get(scratch, 0, length);
+            text = new String(scratch, 0, length, charset);
+        }
+        return text;
+    }
+
+    /**
+     * Rango fijo del buffer visto como chars de un byte
+     */
+    private final class RawRange implements CharSequence {
+        private final int start;
+        private final int end;
+
+        RawRange(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new RawRange(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text(start, end);
+        }
+    }
+
+    private final class RawLine implements CharSequence {
+        @Override
+        public int length() {
+            return lineEnd - lineStart;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(lineStart + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text(lineStart + start, lineStart + end);
+        }
+
+        @Override
+        public String toString() {
+            return text();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.mcp;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Escaneo paralelo de archivos sobre un ForkJoinPool compartido.
+ * Cada tarea hoja acumula sus hallazgos en un almacén propio; los almacenes se
+ * concatenan siguiendo el orden de los paths, así el resultado es determinista
+ * sin importar cómo se repartió el trabajo entre los hilos.
+ */
+final class ParallelScanner {
+    private static volatile ForkJoinPool pool;
+
+    /**
+     * Escanea un archivo y agrega sus hallazgos al almacén recibido
+     */
+    interface FileScanner {
+        void scan(Path file, FindingStore findings);
+    }
+
+    private ParallelScanner() {}
+
+    /**
+     * Escanea los archivos en paralelo y devuelve los hallazgos ordenados por path
+     */
+    static FindingStore scan(List<Path> files, FileScanner scanner) {
+        List<Path> ordered = new ArrayList<>(files);
+        ordered.sort(ScanScheduler.SCAN_ORDER);
+
+        int workers = Config.getScanWorkers();
+        if (workers <= 1 || ordered.size() <= 1) {
+            return new ScanTask(ordered, 0, ordered.size(), scanner, ordered.size()).compute();
+        }
+
+        // Tareas pequeñas para que el work-stealing reparta bien archivos de tamaño desigual
+        int threshold = Math.max(1, ordered.size() / (workers * 8));
+        return getPool(workers).invoke(new ScanTask(ordered, 0, ordered.size(), scanner, threshold));
+    }
+
+    private static ForkJoinPool getPool(int workers) {
+        ForkJoinPool current = pool;
+        if (current == null || current.getParallelism() != workers) {
+            synchronized (ParallelScanner.class) {
+                current = pool;
+                if (current == null || current.getParallelism() != workers) {
+                    if (current != null) {
+                        current.shutdown();
+                    }
+                    current = new ForkJoinPool(workers);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static final class ScanTask extends RecursiveTask<FindingStore> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from, to;
+        private final FileScanner scanner;
+        private final int threshold;
+
+        ScanTask(List<Path> files, int from, int to, FileScanner scanner, int threshold) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.scanner = scanner;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected FindingStore compute() {
+            if (to - from <= threshold) {
+                FindingStore buffer = new FindingStore();
+                for (int i = from; i < to; i++) {
+                    // Almacén nuevo por archivo: cada escáner ve solo los hallazgos de su archivo
+                    FindingStore fileFindings = new FindingStore();
+                    scanner.scan(files.get(i), fileFindings);
+                    buffer.addAll(fileFindings);
+                }
+                return buffer;
+            }
+
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(files, from, mid, scanner, threshold);
+            ScanTask right = new ScanTask(files, mid, to, scanner, threshold);
+            left.fork();
+            FindingStore rightFindings = right.compute();
+            FindingStore leftFindings = left.join();
+            leftFindings.addAll(rightFindings);
+            return leftFindings;
+        }
+    }
+}
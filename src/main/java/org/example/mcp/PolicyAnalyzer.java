@@ -3,13 +3,41 @@ package org.example.mcp;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class PolicyAnalyzer {
-    private final Map<String, List<PolicyRule>> rules;
+    // Incrementar cuando cambie la lógica de análisis para invalidar la caché en disco
+    private static final int SCAN_LOGIC_VERSION = 3;
+    
+    // Límites de las reglas sobre métricas de métodos (JavaMetrics)
+    private static final int MAX_METHOD_LINES = 50;
+    private static final int MAX_METHOD_PARAMETERS = 5;
+    private static final int MAX_CYCLOMATIC_COMPLEXITY = 10;
+    private static final int MAX_NESTING_DEPTH = 3;
+    
+    // No son regex por línea: se evalúan sobre las métricas de cada método al terminar el archivo
+    private static final PolicyRule LINEAS_METODO = new PolicyRule("LINEAS_METODO", null, "MEDIO",
+        "Método excede " + MAX_METHOD_LINES + " líneas, considerar refactoring");
+    private static final PolicyRule PARAMETROS_METODO = new PolicyRule("PARAMETROS_METODO", null, "MEDIO",
+        "Método tiene más de " + MAX_METHOD_PARAMETERS + " parámetros");
+    private static final PolicyRule COMPLEJIDAD_CICLOMATICA = new PolicyRule("COMPLEJIDAD_CICLOMATICA", null, "ALTO",
+        "Complejidad ciclomática mayor que " + MAX_CYCLOMATIC_COMPLEXITY + ", refactorizar");
+    private static final PolicyRule ANIDAMIENTO_PROFUNDO = new PolicyRule("ANIDAMIENTO_PROFUNDO", null, "MEDIO",
+        "Bloques anidados a más de " + MAX_NESTING_DEPTH + " niveles, extraer métodos");
+    
+    private final RuleEngine<PolicyRule> ruleEngine;
+    private final ResultStore results;
     
     public PolicyAnalyzer() {
-        this.rules = initializePolicies();
+        this(null);
+    }
+    
+    /**
+     * Con un ResultStore, los análisis con más de una página de violaciones devuelven un
+     * resumen y los URIs de sus páginas en lugar del listado completo
+     */
+    PolicyAnalyzer(ResultStore results) {
+        this.ruleEngine = new RuleEngine<>("PolicyAnalyzer", initializePolicies());
+        this.results = results;
     }
     
     private Map<String, List<PolicyRule>> initializePolicies() {
@@ -23,15 +51,12 @@ public class PolicyAnalyzer {
         javaRules.add(new PolicyRule("CONSTANTE_UPPERCASE", "static\\s+final\\s+\\w+\\s+[a-z]", "MEDIO", "Constantes deben usar UPPER_CASE"));
         javaRules.add(new PolicyRule("JAVADOC_PUBLICO", "^\\s*public\\s+(class|interface|enum)(?!.*\\/\\*\\*)", "ALTO", "Clases públicas requieren JavaDoc"));
         javaRules.add(new PolicyRule("METODO_PUBLICO_JAVADOC", "^\\s*public\\s+\\w+\\s+\\w+\\s*\\((?!.*\\/\\*\\*)", "MEDIO", "Métodos públicos requieren JavaDoc"));
-        javaRules.add(new PolicyRule("LINEAS_METODO", "\\{[\\s\\S]{1000,}?\\}", "MEDIO", "Método excede 50 líneas, considerar refactoring"));
-        javaRules.add(new PolicyRule("PARAMETROS_METODO", "\\([^)]*,[^)]*,[^)]*,[^)]*,[^)]*,", "MEDIO", "Método tiene más de 5 parámetros"));
         javaRules.add(new PolicyRule("NUMERO_MAGICO", "\\b\\d{2,}\\b(?!\\s*[;,)])", "MEDIO", "Usar constantes nombradas en lugar de números mágicos"));
         javaRules.add(new PolicyRule("IMPORT_WILDCARD", "import\\s+\\w+\\.\\*;", "BAJO", "Evitar imports con wildcard (*)"));
         javaRules.add(new PolicyRule("EXCEPTION_GENERICA", "catch\\s*\\(\\s*Exception", "ALTO", "Capturar excepciones específicas, no Exception genérica"));
         javaRules.add(new PolicyRule("SYSTEM_OUT", "System\\.out\\.print", "BAJO", "Usar logger en lugar de System.out"));
-        javaRules.add(new PolicyRule("TODO_FIXME", "//\\s*(TODO|FIXME)", "BAJO", "Resolver comentarios TODO/FIXME antes de producción"));
-        javaRules.add(new PolicyRule("HARDCODED_STRING", "\"[^\"]{20,}\"", "MEDIO", "Strings largos deben externalizarse"));
-        javaRules.add(new PolicyRule("COMPLEJIDAD_CICLOMATICA", "(if|while|for|switch|catch).*\\{[\\s\\S]*?(if|while|for|switch|catch).*\\{[\\s\\S]*?(if|while|for|switch|catch)", "ALTO", "Complejidad ciclomática alta, refactorizar"));
+        javaRules.add(new PolicyRule("TODO_FIXME", "//\\s*(TODO|FIXME)", "BAJO", "Resolver comentarios TODO/FIXME antes de producción", SourceTokens.COMMENT));
+        javaRules.add(new PolicyRule("HARDCODED_STRING", "\"[^\"]{20,}\"", "MEDIO", "Strings largos deben externalizarse", SourceTokens.STRING));
         policyMap.put("java", javaRules);
         
         List<PolicyRule> jsRules = new ArrayList<>();
@@ -39,7 +64,7 @@ public class PolicyAnalyzer {
         jsRules.add(new PolicyRule("FUNCTION_CAMELCASE", "function\\s+[A-Z]", "MEDIO", "Funciones deben usar camelCase"));
         jsRules.add(new PolicyRule("CONSOLE_LOG_PROD", "console\\.(log|debug|info)", "BAJO", "Remover console.log en producción"));
         jsRules.add(new PolicyRule("EVAL_FORBIDDEN", "\\beval\\s*\\(", "CRÍTICO", "Prohibido uso de eval()"));
-        jsRules.add(new PolicyRule("STRICT_MODE", "^(?!.*'use strict')", "MEDIO", "Usar 'use strict' al inicio del archivo"));
+        jsRules.add(new PolicyRule("STRICT_MODE", "^(?!.*'use strict')", "MEDIO", "Usar 'use strict' al inicio del archivo", SourceTokens.ANY));
         policyMap.put("js", jsRules);
         
         return policyMap;
@@ -63,7 +88,7 @@ public class PolicyAnalyzer {
                 return "❌ No se puede leer el archivo: " + filePath;
             }
             
-            List<PolicyViolation> violations = new ArrayList<>();
+            FindingStore violations = new FindingStore();
             analyzeFile(path, violations);
             
             return formatPolicyResults(violations, filePath);
@@ -76,36 +101,86 @@ public class PolicyAnalyzer {
     }
     
     public String analyzeRepository(String repoPath) {
+        return analyzeRepository(repoPath, null, false);
+    }
+    
+    /**
+     * Analiza el repositorio; con baseRef o stagedOnly solo los archivos modificados según git
+     */
+    public String analyzeRepository(String repoPath, String baseRef, boolean stagedOnly) {
+        return analyzeRepository(repoPath, baseRef, stagedOnly, ScanScheduler.fromConfig(), ScanProgress.NONE,
+                                 CancellationToken.NONE);
+    }
+    
+    /**
+     * Analiza dentro del presupuesto del scheduler; si no alcanza, el reporte incluye el cursor para continuar.
+     * Si se cancela la llamada el análisis se detiene y devuelve el error
+     */
+    String analyzeRepository(String repoPath, String baseRef, boolean stagedOnly,
+                             ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
+        return analyze(repoPath, baseRef, stagedOnly, scheduler, progress, cancellation).render();
+    }
+    
+    /**
+     * Igual que analyzeRepository, pero devuelve el reporte sin formatear: el análisis ya terminó y
+     * el texto se genera al escribirlo
+     */
+    Report analyze(String repoPath, String baseRef, boolean stagedOnly,
+                   ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
         try {
             // Resolver el path completo
             Path path = resolvePath(repoPath);
             
             // Validar que el repositorio existe y es accesible
             if (!Files.exists(path)) {
-                return "❌ Repositorio no encontrado: " + repoPath + " (ruta completa: " + path + ")\n" +
-                       "💡 Intenta usar 'auto' para búsqueda automática o verifica la ruta.";
+                return Report.text("❌ Repositorio no encontrado: " + repoPath + " (ruta completa: " + path + ")\n" +
+                       "💡 Intenta usar 'auto' para búsqueda automática o verifica la ruta.");
             }
             
             if (!Files.isReadable(path)) {
-                return "❌ No se puede leer el repositorio: " + repoPath;
+                return Report.text("❌ No se puede leer el repositorio: " + repoPath);
             }
             
-            List<PolicyViolation> violations = new ArrayList<>();
-            analyzeDirectory(path, violations);
+            FindingStore violations = new FindingStore();
+            if (baseRef != null || stagedOnly) {
+                GitChangeSet changes = GitChangeSet.resolve(path, baseRef, stagedOnly);
+                analyzeChanges(path, changes, violations, scheduler, progress, cancellation);
+                progress.finish();
+                ResultStore.Entry stored = storeIfLarge(violations, repoPath);
+                return Report.of(Report.text(changes.describe()), out -> writePolicyResults(violations, repoPath, stored, out),
+                                 Report.text(scheduler.describe()));
+            }
+            analyzeDirectory(path, violations, scheduler, progress, cancellation);
+            progress.finish();
             
-            return formatPolicyResults(violations, repoPath);
+            ResultStore.Entry stored = storeIfLarge(violations, repoPath);
+            return Report.of(out -> writePolicyResults(violations, repoPath, stored, out), Report.text(scheduler.describe()));
             
         } catch (SecurityException e) {
-            return "❌ Error de seguridad: " + e.getMessage();
+            return Report.text("❌ Error de seguridad: " + e.getMessage());
         } catch (Exception e) {
-            return "❌ Error analizando código: " + e.getMessage();
+            return Report.text("❌ Error analizando código: " + e.getMessage());
         }
     }
     
+    /**
+     * Costo y coincidencias de cada regla; con reset, los contadores vuelven a cero
+     */
+    List<RuleEngine.RuleStats> getRuleStats(boolean reset) {
+        return ruleEngine.getStats(reset);
+    }
+    
+    /**
+     * Reglas compiladas para una extensión, o null si no tiene
+     */
+    RuleEngine.CompiledRuleSet<PolicyRule> rulesFor(String extension) {
+        return ruleEngine.forExtension(extension);
+    }
+    
     /**
      * Resuelve un path relativo o absoluto
      */
-    private Path resolvePath(String repoPath) {
+    Path resolvePath(String repoPath) {
         Path path = Paths.get(repoPath).normalize();
         
         if (path.isAbsolute()) {
@@ -130,18 +205,71 @@ public class PolicyAnalyzer {
         return path;
     }
     
-    private void analyzeDirectory(Path dir, List<PolicyViolation> violations) throws IOException {
-        // Limitar la profundidad de búsqueda para evitar timeouts
-        int maxDepth = 3;
+    private void analyzeDirectory(Path dir, FindingStore violations, ScanScheduler scheduler,
+                                  ScanProgress progress, CancellationToken cancellation) throws IOException {
+        List<Path> files = new ArrayList<>();
+        scheduler.walk(dir, Config.getMaxDepth(), file -> isSupportedFile(file) && isReadableFile(file), file -> {
+            cancellation.throwIfCancelled();
+            files.add(file);
+        });
+        
+        analyzeFiles(dir, files, null, violations, scheduler, progress, cancellation);
+    }
+    
+    /**
+     * Analiza solo los archivos modificados; en modo staged se lee el contenido del index
+     */
+    private void analyzeChanges(Path dir, GitChangeSet changes, FindingStore violations,
+                                ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
+        List<Path> files = new ArrayList<>();
+        scheduler.offer(dir, changes.getFiles(),
+            file -> isSupportedFile(file) && (changes.isStagedOnly() || isReadableFile(file)), files::add);
+        
+        analyzeFiles(dir, files, changes, violations, scheduler, progress, cancellation);
+    }
+    
+    private void analyzeFiles(Path dir, List<Path> files, GitChangeSet changes, FindingStore violations,
+                              ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
+        progress.filesDiscovered(files.size());
+        progress.discoveryFinished();
         
-        try (var stream = Files.walk(dir, maxDepth)) {
-            stream.filter(this::isSupportedFile)
-                  .filter(this::isReadableFile)
-                  .limit(50) // Limitar el número de archivos para evitar timeouts
-                  .forEach(file -> analyzeFile(file, violations));
+        java.nio.charset.Charset charset = java.nio.charset.Charset.forName(Config.getFileEncoding());
+        ScanCache cache = ScanCache.forRepository(dir, "policies", cacheVersion());
+        boolean fromIndex = changes != null && changes.isStagedOnly();
+        try {
+            FindingStore found = ParallelScanner.scan(files, (file, fileViolations) -> {
+                // Tras una cancelación cada tarea pendiente termina aquí sin abrir su archivo
+                cancellation.throwIfCancelled();
+                // Si el presupuesto se agotó antes de llegar a este archivo, queda para la próxima llamada
+                if (!scheduler.canScan(file)) {
+                    return;
+                }
+                try {
+                    ScanCache.Input input = fromIndex
+                        ? ScanCache.uncached(changes.open(file, charset))
+                        : cache.prepare(file, charset);
+                    cache.complete(file, input, (f, lines, out) -> analyzeLines(f, lines, out, cancellation), fileViolations);
+                    scheduler.addFindings(fileViolations.size());
+                    progress.fileScanned(input.bytesRead(), fileViolations.size());
+                } catch (IOException e) {
+                    // Ignorar archivos no legibles
+                }
+            });
+            scheduler.retainCompleted(found);
+            violations.addAll(found);
+        } finally {
+            cache.save();
         }
     }
     
+    /**
+     * Versión de la caché: reglas, límites que afectan a los hallazgos y lógica de análisis
+     */
+    private String cacheVersion() {
+        return ruleEngine.getVersion() + "|" + Config.getMaxLineLength() + "|" + Config.getFileEncoding()
+            + "|" + Config.getRuleTimeoutMillis() + "|" + SCAN_LOGIC_VERSION;
+    }
+    
     private boolean isSupportedFile(Path file) {
         String name = file.toString().toLowerCase();
         return name.endsWith(".java") || name.endsWith(".js") || name.endsWith(".ts");
@@ -155,96 +283,165 @@ public class PolicyAnalyzer {
         }
     }
     
-    private void analyzeFile(Path file, List<PolicyViolation> violations) {
+    void analyzeFile(Path file, FindingStore violations) {
         try {
-            // Verificar tamaño del archivo
+            // Verificar tamaño del archivo antes de mapearlo
             long fileSize = Files.size(file);
             if (fileSize > Config.getMaxFileSize()) {
-                violations.add(new PolicyViolation(
-                    "FILE_TOO_LARGE", "MEDIO", "Archivo demasiado grande para analizar",
-                    file.toString(), 0, "Tamaño: " + fileSize + " bytes"
-                ));
+                violations.add(file, "FILE_TOO_LARGE", "MEDIO", "Archivo demasiado grande para analizar",
+                    0, "Tamaño: " + fileSize + " bytes");
                 return;
             }
             
-            String content = new String(Files.readAllBytes(file), java.nio.charset.Charset.forName(Config.getFileEncoding()));
-            String extension = getFileExtension(file);
-            List<PolicyRule> fileRules = rules.get(extension);
-            if (fileRules == null) return;
-            
-            String[] lines = content.split("\\n");
-            int maxLines = Math.min(lines.length, 1000); // Limitar el número de líneas para evitar timeouts
-            
-            for (int i = 0; i < maxLines; i++) {
-                String line = lines[i];
-                
-                // Validar longitud de línea
-                if (line.length() > Config.getMaxLineLength()) {
-                    violations.add(new PolicyViolation(
-                        "LINE_TOO_LONG", "BAJO", "Línea demasiado larga",
-                        file.toString(), i + 1, "Longitud: " + line.length() + " caracteres"
-                    ));
-                    continue;
-                }
-                
-                for (PolicyRule rule : fileRules) {
-                    try {
-                        if (Pattern.compile(rule.pattern).matcher(line).find()) {
-                            violations.add(new PolicyViolation(
-                                rule.name, rule.severity, rule.solution,
-                                file.toString(), i + 1, line.trim()
-                            ));
-                            // Limitar el número de violations por archivo para evitar timeouts
-                            if (violations.size() >= 20) {
-                                return;
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignorar patrones regex inválidos
-                    }
-                }
+            MappedLines lines = MappedLines.map(file, java.nio.charset.Charset.forName(Config.getFileEncoding()));
+            try {
+                analyzeLines(file, lines, violations, CancellationToken.NONE);
+            } finally {
+                lines.release();
             }
         } catch (IOException e) {
             // Ignorar archivos no legibles
         }
     }
     
+    private void analyzeLines(Path file, MappedLines lines, FindingStore violations, CancellationToken cancellation) {
+        // Verificar tamaño del archivo
+        long fileSize = lines.size();
+        if (fileSize > Config.getMaxFileSize()) {
+            violations.add(file, "FILE_TOO_LARGE", "MEDIO", "Archivo demasiado grande para analizar",
+                0, "Tamaño: " + fileSize + " bytes");
+            return;
+        }
+        
+        String extension = getFileExtension(file);
+        RuleEngine.CompiledRuleSet<PolicyRule> fileRules = ruleEngine.forExtension(extension);
+        if (fileRules == null) return;
+        
+        // Las reglas de métodos necesitan ver todas las líneas, también las que no pasan el prefiltro
+        SourceTokens.LineScopes scopes = SourceTokens.lineScopes(file, lines);
+        List<PolicyRule> timedOut = new ArrayList<>(1);
+        JavaMetrics metrics = "java".equals(extension) ? new JavaMetrics() : null;
+        SourceTokens tokens = metrics != null ? scopes.tokens() : null;
+        int maxLineLength = Config.getMaxLineLength();
+        while (lines.next()) {
+            cancellation.checkLine(lines.lineNumber());
+            if (metrics != null) {
+                metrics.feed(lines.raw(), lines.lineNumber(), lines.lineStart(), lines.lineEnd(), tokens);
+            }
+            
+            // Validar longitud de línea (en bytes primero; solo se decodifica si puede excederla)
+            if (lines.byteLength() > maxLineLength && lines.text().length() > maxLineLength) {
+                violations.add(file, "LINE_TOO_LONG", "BAJO", "Línea demasiado larga",
+                    lines.lineNumber(), "Longitud: " + lines.text().length() + " caracteres");
+                continue;
+            }
+            
+            long[] candidates = lines.candidates(fileRules);
+            if (candidates == null) continue;
+            
+            String line = lines.text();
+            for (PolicyRule rule : fileRules.match(line, candidates, scopes != null ? scopes.at(line) : null, timedOut)) {
+                violations.add(file, rule, lines);
+            }
+            for (PolicyRule rule : timedOut) {
+                violations.add(file, RuleEngine.TIMEOUT_FINDING, "BAJO", "Regla abortada por exceder el tiempo máximo por línea",
+                    lines.lineNumber(), "Regla: " + rule.name);
+            }
+            timedOut.clear();
+        }
+        
+        if (metrics != null) {
+            addMethodViolations(file, lines, metrics, violations);
+        }
+    }
+    
+    private void addMethodViolations(Path file, MappedLines lines, JavaMetrics metrics, FindingStore violations) {
+        for (JavaMetrics.Method method : metrics.methods()) {
+            if (method.lines > MAX_METHOD_LINES) {
+                addMethodViolation(file, lines, method, LINEAS_METODO, violations);
+            }
+            if (method.parameters > MAX_METHOD_PARAMETERS) {
+                addMethodViolation(file, lines, method, PARAMETROS_METODO, violations);
+            }
+            if (method.complexity > MAX_CYCLOMATIC_COMPLEXITY) {
+                addMethodViolation(file, lines, method, COMPLEJIDAD_CICLOMATICA, violations);
+            }
+            if (method.maxNesting > MAX_NESTING_DEPTH) {
+                addMethodViolation(file, lines, method, ANIDAMIENTO_PROFUNDO, violations);
+            }
+        }
+    }
+    
+    /**
+     * La violación se reporta en la línea de la cabecera del método
+     */
+    private void addMethodViolation(Path file, MappedLines lines, JavaMetrics.Method method, PolicyRule rule,
+                                    FindingStore violations) {
+        if (method.code != null) {
+            violations.add(file, rule.name, rule.severity, rule.solution, method.line, method.code);
+        } else if (lines.isFileBacked()) {
+            violations.add(file, rule.name, rule.severity, rule.solution, method.line, method.codeStart, method.codeEnd);
+        } else {
+            violations.add(file, rule.name, rule.severity, rule.solution, method.line,
+                lines.text(method.codeStart, method.codeEnd).trim());
+        }
+    }
+    
     private String getFileExtension(Path file) {
         String name = file.toString();
         int lastDot = name.lastIndexOf('.');
         return lastDot > 0 ? name.substring(lastDot + 1) : "";
     }
     
-    private String formatPolicyResults(List<PolicyViolation> violations, String path) {
+    String formatPolicyResults(FindingStore violations, String path) {
+        Report report = out -> writePolicyResults(violations, path, null, out);
+        return report.render();
+    }
+    
+    private ResultStore.Entry storeIfLarge(FindingStore violations, String path) {
+        return results != null ? results.storeIfLarge("Políticas de desarrollo: " + path, violations, this::formatViolation) : null;
+    }
+    
+    /**
+     * Con stored, en lugar de listar las violaciones se escribe el resumen con los URIs de sus páginas
+     */
+    private void writePolicyResults(FindingStore violations, String path, ResultStore.Entry stored, Writer out) throws IOException {
         if (violations.isEmpty()) {
-            return "✅ Código cumple con las políticas de desarrollo\n📁 " + path;
+            out.write("✅ Código cumple con las políticas de desarrollo\n📁 " + path);
+            return;
         }
         
-        StringBuilder result = new StringBuilder();
-        result.append("📋 ANÁLISIS DE POLÍTICAS DE DESARROLLO\n");
-        result.append("📁 ").append(path).append("\n");
-        result.append("📊 Violaciones encontradas: ").append(violations.size()).append("\n\n");
+        out.write("📋 ANÁLISIS DE POLÍTICAS DE DESARROLLO\n");
+        out.write("📁 " + path + "\n");
+        out.write("📊 Violaciones encontradas: " + violations.size() + "\n\n");
         
+        if (stored != null) {
+            stored.writeSummary(out);
+            return;
+        }
         Map<String, Integer> severityCount = new HashMap<>();
-        for (PolicyViolation violation : violations) {
-            severityCount.merge(violation.severity, 1, Integer::sum);
-            result.append(formatViolation(violation)).append("\n");
+        try (FindingStore.Snippets snippets = violations.snippets()) {
+            for (int i = 0; i < violations.size(); i++) {
+                severityCount.merge(violations.getLevel(i), 1, Integer::sum);
+                out.write(formatViolation(violations, i, snippets));
+                out.write("\n");
+            }
         }
         
-        result.append("\n📈 RESUMEN:\n");
-        severityCount.forEach((severity, count) -> 
-            result.append(getSeverityIcon(severity)).append(" ").append(severity).append(": ").append(count).append("\n"));
-        
-        return result.toString();
+        out.write("\n📈 RESUMEN:\n");
+        for (Map.Entry<String, Integer> entry : severityCount.entrySet()) {
+            out.write(getSeverityIcon(entry.getKey()) + " " + entry.getKey() + ": " + entry.getValue() + "\n");
+        }
     }
     
-    private String formatViolation(PolicyViolation violation) {
-        String fileName = violation.file.substring(violation.file.lastIndexOf(Config.getFileSeparator()) + 1);
+    private String formatViolation(FindingStore violations, int row, FindingStore.Snippets snippets) {
+        String file = violations.getFile(row);
+        String fileName = file.substring(file.lastIndexOf(Config.getFileSeparator()) + 1);
         return String.format("%s %s\n📁 %s:%d\n💻 %s\n🔧 %s\n",
-            getSeverityIcon(violation.severity), violation.name,
-            fileName, violation.line,
-            violation.code,
-            violation.solution);
+            getSeverityIcon(violations.getLevel(row)), violations.getName(row),
+            fileName, violations.getLine(row),
+            snippets.code(row),
+            violations.getAdvice(row));
     }
     
     private String getSeverityIcon(String severity) {
@@ -256,29 +453,35 @@ public class PolicyAnalyzer {
         }
     }
     
-    static class PolicyRule {
+    static class PolicyRule implements RuleEngine.Rule {
         final String name, pattern, severity, solution;
+        final int scopes;
         
         PolicyRule(String name, String pattern, String severity, String solution) {
-            this.name = name;
-            this.pattern = pattern;
-            this.severity = severity;
-            this.solution = solution;
+            this(name, pattern, severity, solution, SourceTokens.CODE);
         }
-    }
-    
-    static class PolicyViolation {
-        final String name, severity, solution, file, code;
-        final int line;
         
-        PolicyViolation(String name, String severity, String solution, 
-                       String file, int line, String code) {
+        PolicyRule(String name, String pattern, String severity, String solution, int scopes) {
             this.name = name;
+            this.pattern = pattern;
             this.severity = severity;
             this.solution = solution;
-            this.file = file;
-            this.line = line;
-            this.code = code;
+            this.scopes = scopes;
         }
+        
+        @Override
+        public String getName() { return name; }
+        
+        @Override
+        public String getPattern() { return pattern; }
+        
+        @Override
+        public String getLevel() { return severity; }
+        
+        @Override
+        public String getAdvice() { return solution; }
+        
+        @Override
+        public int getScopes() { return scopes; }
     }
 }
\ No newline at end of file
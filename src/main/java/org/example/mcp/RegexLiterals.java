@@ -0,0 +1,259 @@
+package org.example.mcp;
+
+import java.util.*;
+
+/**
+ * Extrae de una expresión regular los literales que toda coincidencia debe contener.
+ * El análisis es conservador: si el patrón usa construcciones que no entiende
+ * (flags, \Q...\E, escapes numéricos) no devuelve nada y la regla se evalúa siempre.
+ */
+final class RegexLiterals {
+    private final String regex;
+    private int pos;
+
+    private RegexLiterals(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Devuelve un conjunto de literales tal que cualquier coincidencia del patrón
+     * contiene al menos uno de ellos, o null si no se puede garantizar ninguno
+     */
+    static Set<String> requiredLiterals(String regex) {
+        try {
+            RegexLiterals parser = new RegexLiterals(regex);
+            Set<String> result = parser.parseAlternation();
+            return parser.pos == regex.length() ? result : null;
+        } catch (UnsupportedOperationException | IndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Set<String> parseAlternation() {
+        List<Set<String>> branches = new ArrayList<>();
+        branches.add(parseSequence());
+        while (pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            branches.add(parseSequence());
+        }
+
+        if (branches.size() == 1) {
+            return branches.get(0);
+        }
+        Set<String> union = new LinkedHashSet<>();
+        for (Set<String> branch : branches) {
+            if (branch == null) {
+                return null;
+            }
+            union.addAll(branch);
+        }
+        return union;
+    }
+
+    private Set<String> parseSequence() {
+        List<Set<String>> candidates = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '|' || c == ')') {
+                break;
+            }
+
+            if (c == '(') {
+                flush(run, candidates);
+                Set<String> group = parseGroup();
+                // El cuantificador se consume siempre, aunque el grupo no aporte literales
+                int quantifier = skipQuantifier();
+                if (group != null && isRequired(quantifier)) {
+                    candidates.add(group);
+                }
+                continue;
+            }
+
+            int literal = parseAtom();
+            int quantifier = skipQuantifier();
+            if (literal < 0 || !isRequired(quantifier)) {
+                flush(run, candidates);
+                continue;
+            }
+            run.append((char) literal);
+            if (quantifier != QUANT_ONE) {
+                // Una repetición rompe la contigüidad con lo que sigue
+                flush(run, candidates);
+            }
+        }
+
+        flush(run, candidates);
+        return best(candidates);
+    }
+
+    private Set<String> parseGroup() {
+        pos++; // '('
+        boolean zeroWidth = false;
+        if (regex.charAt(pos) == '?') {
+            char kind = regex.charAt(pos + 1);
+            if (kind == ':' || kind == '>') {
+                pos += 2;
+            } else if (kind == '=' || kind == '!') {
+                pos += 2;
+                zeroWidth = true;
+            } else if (kind == '<' && (regex.charAt(pos + 2) == '=' || regex.charAt(pos + 2) == '!')) {
+                pos += 3;
+                zeroWidth = true;
+            } else if (kind == '<') {
+                int end = regex.indexOf('>', pos);
+                if (end < 0) {
+                    throw new UnsupportedOperationException();
+                }
+                pos = end + 1;
+            } else {
+                // Flags en línea como (?i) cambian el significado de los literales
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        Set<String> inner = parseAlternation();
+        if (pos >= regex.length() || regex.charAt(pos) != ')') {
+            throw new UnsupportedOperationException();
+        }
+        pos++;
+        return zeroWidth ? null : inner;
+    }
+
+    /**
+     * Consume un átomo y devuelve su carácter literal, o -1 si no es un literal
+     */
+    private int parseAtom() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '[':
+                skipCharClass();
+                return -1;
+            case '.':
+            case '^':
+            case '$':
+                return -1;
+            case '\\':
+                return parseEscape();
+            default:
+                return c;
+        }
+    }
+
+    private int parseEscape() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case 'd': case 'D': case 's': case 'S': case 'w': case 'W':
+            case 'b': case 'B': case 'A': case 'G': case 'z': case 'Z':
+            case 'h': case 'H': case 'v': case 'V': case 'R': case 'X':
+                return -1;
+            case 'p':
+            case 'P':
+                if (regex.charAt(pos) == '{') {
+                    pos = regex.indexOf('}', pos) + 1;
+                } else {
+                    pos++;
+                }
+                return -1;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // Secuencias \Q, escapes hexadecimales/unicode, referencias hacia atrás, etc.
+                    throw new UnsupportedOperationException();
+                }
+                return c;
+        }
+    }
+
+    private void skipCharClass() {
+        int depth = 1;
+        if (regex.charAt(pos) == '^') {
+            pos++;
+        }
+        if (regex.charAt(pos) == ']') {
+            pos++;
+        }
+        while (depth > 0) {
+            char c = regex.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    private static final int QUANT_ONE = 0;
+    private static final int QUANT_OPTIONAL = 1;
+    private static final int QUANT_REPEAT = 2;
+
+    private int skipQuantifier() {
+        if (pos >= regex.length()) {
+            return QUANT_ONE;
+        }
+        char c = regex.charAt(pos);
+        int kind;
+        if (c == '?' || c == '*') {
+            pos++;
+            kind = QUANT_OPTIONAL;
+        } else if (c == '+') {
+            pos++;
+            kind = QUANT_REPEAT;
+        } else if (c == '{') {
+            int end = regex.indexOf('}', pos);
+            if (end < 0) {
+                throw new UnsupportedOperationException();
+            }
+            String min = regex.substring(pos + 1, end).split(",", -1)[0].trim();
+            pos = end + 1;
+            kind = min.isEmpty() || Integer.parseInt(min) == 0 ? QUANT_OPTIONAL : QUANT_REPEAT;
+        } else {
+            return QUANT_ONE;
+        }
+        // Modificadores lazy/posesivo
+        if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+            pos++;
+        }
+        return kind;
+    }
+
+    private static boolean isRequired(int quantifier) {
+        return quantifier != QUANT_OPTIONAL;
+    }
+
+    private static void flush(StringBuilder run, List<Set<String>> candidates) {
+        if (run.length() > 0) {
+            candidates.add(Collections.singleton(run.toString()));
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Prefiere el conjunto cuyo literal más corto sea más largo (más selectivo)
+     */
+    private static Set<String> best(List<Set<String>> candidates) {
+        Set<String> best = null;
+        int bestScore = 0;
+        for (Set<String> candidate : candidates) {
+            int shortest = Integer.MAX_VALUE;
+            for (String literal : candidate) {
+                shortest = Math.min(shortest, literal.length());
+            }
+            if (shortest == 0) {
+                continue;
+            }
+            if (best == null || shortest > bestScore
+                    || (shortest == bestScore && candidate.size() < best.size())) {
+                best = candidate;
+                bestScore = shortest;
+            }
+        }
+        return best;
+    }
+}
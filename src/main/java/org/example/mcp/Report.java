@@ -0,0 +1,47 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Reporte de texto de una herramienta, generado bajo demanda. El escaneo ya ocurrió
+ * al crearlo; writeTo solo formatea, pieza a pieza, sobre el Writer recibido. Así el
+ * servidor puede escribirlo directamente en la respuesta JSON sin armar el reporte
+ * completo en memoria.
+ */
+interface Report {
+    void writeTo(Writer out) throws IOException;
+
+    /**
+     * Reporte de texto fijo (mensajes de error, resultados breves)
+     */
+    static Report text(String text) {
+        return out -> out.write(text);
+    }
+
+    /**
+     * Concatena varios reportes en orden
+     */
+    static Report of(Report... parts) {
+        return out -> {
+            for (Report part : parts) {
+                part.writeTo(out);
+            }
+        };
+    }
+
+    /**
+     * Genera el reporte completo como String, para los llamadores que lo necesitan entero
+     */
+    default String render() {
+        StringWriter out = new StringWriter();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return out.toString();
+    }
+}
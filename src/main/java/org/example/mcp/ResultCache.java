@@ -0,0 +1,289 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Caché en memoria de los reportes de scan_repo y analyze_policies. La clave es la
+ * herramienta con sus argumentos normalizados, y cada entrada guarda un Snapshot de lo
+ * que leyó el escaneo (tamaño y mtime de cada directorio listado y cada archivo
+ * analizado): si nada de eso cambió, el reporte se devuelve tal cual sin pasar por los
+ * analizadores. Comprobarlo cuesta un stat por path, sin listar directorios.
+ *
+ * Acotada por el tamaño total de los reportes, con descarte LRU. Solo se guardan
+ * reportes completos: los parciales por presupuesto, los que abortaron reglas por
+ * tiempo, los errores y los que superan el límite se generan siempre.
+ */
+final class ResultCache {
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final Predicate<String> stillValid;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes;
+
+    /**
+     * stillValid confirma que un reporte guardado sigue siendo utilizable (p.ej. que las
+     * páginas de ResultStore a las que remite no se hayan descartado)
+     */
+    ResultCache(long maxBytes, Predicate<String> stillValid) {
+        this.maxBytes = maxBytes;
+        this.stillValid = stillValid;
+    }
+
+    /**
+     * Reporte guardado para la clave si lo que leyó sigue igual, o null
+     */
+    String get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !entry.snapshot.isCurrent() || !stillValid.test(entry.text)) {
+            if (entry != null) {
+                remove(key, entry);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.text;
+    }
+
+    /**
+     * Envuelve el reporte para guardarlo mientras se escribe: el texto se copia a medida
+     * que sale y se guarda solo si el reporte terminó sin errores y cabe en la caché.
+     * Sin snapshot, o si alguno de sus mtimes no era fiable, el reporte no se guarda
+     */
+    Report recording(String key, Snapshot snapshot, Report report) {
+        if (snapshot == null) {
+            return report;
+        }
+        return out -> {
+            Recorder recorder = new Recorder(out);
+            report.writeTo(recorder);
+            if (!recorder.overflow && !snapshot.racy) {
+                String text = recorder.copy.toString();
+                if (!text.startsWith("❌")) {
+                    put(key, new Entry(snapshot, text));
+                }
+            }
+        };
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.bytes();
+        }
+        totalBytes += entry.bytes();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            if (evicted != entry) {
+                eldest.remove();
+                totalBytes -= evicted.bytes();
+            }
+        }
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            totalBytes -= entry.bytes();
+        }
+    }
+
+    synchronized String describe() {
+        return hits.get() + " hits, " + misses.get() + " misses, " + entries.size() + " entradas, "
+            + totalBytes + " bytes";
+    }
+
+    /**
+     * Tamaño y mtime de los paths que leyó un escaneo, tomados antes de leerlos: si un
+     * archivo cambia durante el escaneo, la siguiente comprobación ya no coincide. Un
+     * mtime en el tick actual lo marca como no fiable (ScanCache.isRacy)
+     */
+    static final class Snapshot {
+        private static final long MISSING = -1;
+
+        private final List<Path> paths = new ArrayList<>();
+        private long[] attributes = new long[64];
+        private volatile boolean racy;
+
+        /**
+         * Anota un path que todavía no se leyó; si no existe, cuenta que siga sin existir
+         */
+        void add(Path path) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                attrs = null;
+            }
+            add(path, attrs);
+        }
+
+        synchronized void add(Path path, BasicFileAttributes attrs) {
+            int slot = 2 * paths.size();
+            if (slot == attributes.length) {
+                attributes = Arrays.copyOf(attributes, slot * 2);
+            }
+            paths.add(path);
+            attributes[slot] = attrs != null ? attrs.size() : MISSING;
+            attributes[slot + 1] = attrs != null ? attrs.lastModifiedTime().toMillis() : MISSING;
+            if (attrs != null && ScanCache.isRacy(attributes[slot + 1])) {
+                racy = true;
+            }
+        }
+
+        /**
+         * Estado de git del que dependen los análisis con staged_only: HEAD, index y refs
+         * (con base_ref el merge-base sale de ellas). El contenido se lee del index, así que
+         * el working tree no cuenta. null si no hay un directorio .git en dir o encima
+         */
+        static Snapshot ofGitState(Path dir) {
+            Path gitDir = null;
+            for (Path current = dir.toAbsolutePath().normalize(); current != null; current = current.getParent()) {
+                if (Files.isDirectory(current.resolve(".git"))) {
+                    gitDir = current.resolve(".git");
+                    break;
+                }
+            }
+            if (gitDir == null) {
+                return null; // Worktree enlazado o sin repositorio: no se cachea
+            }
+
+            Snapshot snapshot = new Snapshot();
+            for (String name : new String[] {"HEAD", "index", "packed-refs", "ORIG_HEAD", "FETCH_HEAD"}) {
+                snapshot.add(gitDir.resolve(name));
+            }
+            // Una ref suelta se actualiza renombrando su archivo, lo que también cambia el mtime de su directorio
+            try {
+                Files.walkFileTree(gitDir.resolve("refs"), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path refs, BasicFileAttributes attrs) {
+                        snapshot.add(refs, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path ref, BasicFileAttributes attrs) {
+                        snapshot.add(ref, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                return null;
+            }
+            return snapshot;
+        }
+
+        /**
+         * Si ningún path cambió de tamaño ni de mtime, ni apareció o desapareció
+         */
+        boolean isCurrent() {
+            Path[] current;
+            long[] recorded;
+            synchronized (this) {
+                current = paths.toArray(new Path[0]);
+                recorded = attributes;
+            }
+            for (int i = 0; i < current.length; i++) {
+                long size;
+                long modified;
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(current[i], BasicFileAttributes.class);
+                    size = attrs.size();
+                    modified = attrs.lastModifiedTime().toMillis();
+                } catch (IOException e) {
+                    size = MISSING;
+                    modified = MISSING;
+                }
+                if (size != recorded[2 * i] || modified != recorded[2 * i + 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        synchronized long bytes() {
+            long total = 16L * paths.size();
+            for (Path path : paths) {
+                total += ENTRY_OVERHEAD + 2L * path.toString().length();
+            }
+            return total;
+        }
+    }
+
+    private static final class Entry {
+        final Snapshot snapshot;
+        final String text;
+        final long bytes;
+
+        Entry(Snapshot snapshot, String text) {
+            this.snapshot = snapshot;
+            this.text = text;
+            this.bytes = ENTRY_OVERHEAD + snapshot.bytes() + 2L * text.length();
+        }
+
+        long bytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Copia lo escrito mientras no supere el límite de la caché
+     */
+    private final class Recorder extends Writer {
+        private final Writer out;
+        private final StringBuilder copy = new StringBuilder();
+        private boolean overflow;
+
+        Recorder(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) throws IOException {
+            out.write(buffer, offset, count);
+            if (!overflow) {
+                copy.append(buffer, offset, count);
+                check();
+            }
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            out.write(text);
+            if (!overflow) {
+                copy.append(text);
+                check();
+            }
+        }
+
+        private void check() {
+            if (ENTRY_OVERHEAD + 2L * copy.length() > maxBytes) {
+                overflow = true;
+                copy.setLength(0);
+                copy.trimToSize();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // El Writer de destino lo cierra quien lo creó
+        }
+    }
+}
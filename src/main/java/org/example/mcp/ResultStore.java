@@ -0,0 +1,280 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resultados de escaneo guardados en el servidor. Cuando un escaneo supera una página
+ * de hallazgos, la herramienta devuelve solo un resumen y los URIs
+ * scan://<id>/findings?page=N, que el cliente lee con resources/read. Los hallazgos
+ * se guardan en su FindingStore y cada página se formatea al leerla; el código de cada
+ * hallazgo se copia al guardarlo, porque el archivo puede cambiar antes de la lectura.
+ *
+ * La retención es un LRU acotado por la memoria estimada de los almacenes: al superar
+ * Config.getResultsMaxBytes() se descartan los resultados leídos hace más tiempo.
+ */
+final class ResultStore {
+    static final String SCHEME = "scan://";
+    private static final int LIST_PAGE_SIZE = 50;
+    private static final int SUMMARY_MAX_URIS = 10;
+
+    /**
+     * Formatea una fila con el mismo formato que el reporte en línea del analizador
+     */
+    interface RowFormatter {
+        String format(FindingStore findings, int row, FindingStore.Snippets snippets);
+    }
+
+    private final long maxBytes;
+    private final int pageSize;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    ResultStore(long maxBytes, int pageSize) {
+        this.maxBytes = maxBytes;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Guarda los hallazgos si ocupan más de una página; devuelve null si caben en la
+     * respuesta o si no entran en el límite de memoria
+     */
+    Entry storeIfLarge(String title, FindingStore scanned, RowFormatter formatter) {
+        if (scanned.size() <= pageSize) {
+            return null;
+        }
+        FindingStore findings = scanned.withLiteralCode();
+        long bytes = findings.estimatedBytes();
+        if (bytes > maxBytes) {
+            Log.warn("⚠️ Resultado de " + bytes + " bytes supera results.max.bytes: se devuelve en línea");
+            return null;
+        }
+        Entry entry = new Entry(UUID.randomUUID().toString(), sequence.incrementAndGet(), title, findings, formatter, bytes);
+        synchronized (this) {
+            entries.put(entry.id, entry);
+            totalBytes += bytes;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                if (evicted != entry) {
+                    eldest.remove();
+                    totalBytes -= evicted.bytes;
+                    Log.debug(() -> "🗑️ Resultado descartado por LRU: " + evicted.id);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Página de recursos para resources/list, en orden de creación. El cursor es opaco
+     * y apunta al primer recurso de la siguiente página
+     */
+    Map<String, Object> list(String cursor) {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        snapshot.sort(Comparator.comparingLong(entry -> entry.sequence));
+
+        long fromSequence = 0;
+        int fromPage = 1;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor);
+            try {
+                fromSequence = Long.parseLong(position[0]);
+                fromPage = Integer.parseInt(position[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("cursor inválido: " + cursor);
+            }
+        }
+
+        List<Map<String, Object>> resources = new ArrayList<>();
+        String nextCursor = null;
+        for (Entry entry : snapshot) {
+            if (entry.sequence < fromSequence) {
+                continue;
+            }
+            int firstPage = entry.sequence == fromSequence ? fromPage : 1;
+            for (int page = firstPage; page <= entry.pageCount(); page++) {
+                if (resources.size() == LIST_PAGE_SIZE) {
+                    nextCursor = encodeCursor(entry.sequence + ":" + page);
+                    break;
+                }
+                resources.add(entry.describePage(page));
+            }
+            if (nextCursor != null) {
+                break;
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("resources", resources);
+        if (nextCursor != null) {
+            result.put("nextCursor", nextCursor);
+        }
+        return result;
+    }
+
+    /**
+     * Texto de la página indicada por el URI, o null si el resultado no existe o ya se descartó
+     */
+    String read(String uri) {
+        if (uri == null || !uri.startsWith(SCHEME)) {
+            return null;
+        }
+        String rest = uri.substring(SCHEME.length());
+        int slash = rest.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(rest.substring(0, slash));
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        String resource = rest.substring(slash + 1);
+        int page = 1;
+        if (resource.startsWith("findings?page=")) {
+            try {
+                page = Integer.parseInt(resource.substring("findings?page=".length()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("página inválida: " + uri);
+            }
+        } else if (!"findings".equals(resource)) {
+            return null;
+        }
+        if (page < 1 || page > entry.pageCount()) {
+            throw new IllegalArgumentException("página fuera de rango (1-" + entry.pageCount() + "): " + uri);
+        }
+        return entry.renderPage(page);
+    }
+
+    /**
+     * Comprueba que siguen guardados todos los resultados a los que remite un reporte
+     * (los URIs de su resumen) y los marca como usados recientemente
+     */
+    boolean touchReferenced(String report) {
+        int at = report.indexOf(SCHEME);
+        while (at >= 0) {
+            int start = at + SCHEME.length();
+            int slash = report.indexOf('/', start);
+            if (slash < 0) {
+                return false;
+            }
+            synchronized (this) {
+                if (entries.get(report.substring(start, slash)) == null) {
+                    return false;
+                }
+            }
+            at = report.indexOf(SCHEME, slash);
+        }
+        return true;
+    }
+
+    private static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        String[] position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("cursor inválido: " + cursor);
+        }
+        if (position.length != 2) {
+            throw new IllegalArgumentException("cursor inválido: " + cursor);
+        }
+        return position;
+    }
+
+    /**
+     * Un resultado guardado: no se modifica después de crearlo, así varias lecturas
+     * pueden formatear páginas a la vez
+     */
+    final class Entry {
+        final String id;
+        private final long sequence;
+        private final String title;
+        private final FindingStore findings;
+        private final RowFormatter formatter;
+        private final long bytes;
+
+        private Entry(String id, long sequence, String title, FindingStore findings, RowFormatter formatter, long bytes) {
+            this.id = id;
+            this.sequence = sequence;
+            this.title = title;
+            this.findings = findings;
+            this.formatter = formatter;
+            this.bytes = bytes;
+        }
+
+        int pageCount() {
+            return (findings.size() + pageSize - 1) / pageSize;
+        }
+
+        String uri(int page) {
+            return SCHEME + id + "/findings?page=" + page;
+        }
+
+        /**
+         * Resumen para la respuesta de la herramienta: hallazgos por nivel y URIs de las páginas
+         */
+        void writeSummary(Writer out) throws IOException {
+            Map<String, Integer> levelCount = new LinkedHashMap<>();
+            for (int i = 0; i < findings.size(); i++) {
+                levelCount.merge(findings.getLevel(i), 1, Integer::sum);
+            }
+            out.write("📈 Por nivel:");
+            for (Map.Entry<String, Integer> level : levelCount.entrySet()) {
+                out.write(" " + level.getKey() + " " + level.getValue() + ";");
+            }
+            out.write("\n\n📄 Resultados completos en " + pageCount() + " páginas de " + pageSize
+                + " hallazgos (resources/read):\n");
+            int listed = Math.min(pageCount(), SUMMARY_MAX_URIS);
+            for (int page = 1; page <= listed; page++) {
+                out.write("   " + uri(page) + "\n");
+            }
+            if (pageCount() > listed) {
+                out.write("   … hasta " + uri(pageCount()) + "\n");
+            }
+        }
+
+        private Map<String, Object> describePage(int page) {
+            Map<String, Object> resource = new HashMap<>();
+            resource.put("uri", uri(page));
+            resource.put("name", title + " (página " + page + " de " + pageCount() + ")");
+            resource.put("description", findings.size() + " hallazgos en total");
+            resource.put("mimeType", "text/plain");
+            return resource;
+        }
+
+        private String renderPage(int page) {
+            int from = (page - 1) * pageSize;
+            int to = Math.min(findings.size(), from + pageSize);
+            StringWriter out = new StringWriter();
+            out.write("📄 " + title + "\n");
+            out.write("📊 Página " + page + " de " + pageCount() + ": hallazgos " + (from + 1) + "-" + to
+                + " de " + findings.size() + "\n\n");
+            try (FindingStore.Snippets snippets = findings.snippets()) {
+                for (int row = from; row < to; row++) {
+                    out.write(formatter.format(findings, row, snippets));
+                    out.write("\n");
+                }
+            }
+            if (page < pageCount()) {
+                out.write("➡️ Siguiente: " + uri(page + 1) + "\n");
+            }
+            return out.toString();
+        }
+    }
+}
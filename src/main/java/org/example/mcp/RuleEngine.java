@@ -0,0 +1,502 @@
+package org.example.mcp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Motor de reglas compartido por SecurityAnalyzer, PolicyAnalyzer y ChecklistAuditor.
+ * Compila las expresiones regulares de cada lenguaje una sola vez al construirse;
+ * es inmutable y puede usarse desde varios hilos a la vez.
+ */
+public final class RuleEngine<R extends RuleEngine.Rule> {
+    /** Hallazgo de una regla abortada por tiempo: depende de la carga, no del contenido */
+    public static final String TIMEOUT_FINDING = "RULE_TIMEOUT";
+    // Reglas abortadas por tiempo en todo el proceso
+    private static final LongAdder TIMEOUTS = new LongAdder();
+
+    private final String owner;
+    private final Map<String, CompiledRuleSet<R>> ruleSets;
+    private final List<String> loadErrors;
+    private final String version;
+
+    /**
+     * Definición mínima que una regla debe exponer para ser compilada
+     */
+    public interface Rule {
+        String getName();
+        String getPattern();
+        /** Severidad o categoría con la que se reporta */
+        String getLevel();
+        /** Solución o recomendación asociada */
+        String getAdvice();
+        /**
+         * Ámbitos (SourceTokens.CODE, COMMENT, STRING) en los que puede empezar una
+         * coincidencia; solo se aplican a los archivos que tienen tokenizador
+         */
+        default int getScopes() { return SourceTokens.CODE; }
+    }
+
+    /**
+     * Ámbito de cada posición de la línea que se está evaluando
+     */
+    public interface ScopeResolver {
+        /** Ámbito de la posición index del texto de la línea */
+        int scopeAt(int index);
+        /** Unión de los ámbitos presentes en la línea */
+        int lineScopes();
+    }
+
+    public RuleEngine(String owner, Map<String, List<R>> rules) {
+        this.owner = owner;
+        Map<String, CompiledRuleSet<R>> compiled = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        // Las listas compartidas entre extensiones (p.ej. js/ts) se compilan una sola vez
+        Map<List<R>, CompiledRuleSet<R>> byIdentity = new IdentityHashMap<>();
+
+        for (Map.Entry<String, List<R>> entry : rules.entrySet()) {
+            CompiledRuleSet<R> ruleSet = byIdentity.get(entry.getValue());
+            if (ruleSet == null) {
+                ruleSet = compile(entry.getKey(), entry.getValue(), errors);
+                byIdentity.put(entry.getValue(), ruleSet);
+            }
+            compiled.put(entry.getKey(), ruleSet);
+        }
+
+        this.ruleSets = Collections.unmodifiableMap(compiled);
+        this.loadErrors = Collections.unmodifiableList(errors);
+        this.version = computeVersion(rules);
+
+        for (String error : loadErrors) {
+            Log.warn("⚠️ " + owner + ": " + error);
+        }
+    }
+
+    private CompiledRuleSet<R> compile(String language, List<R> rules, List<String> errors) {
+        List<R> valid = new ArrayList<>(rules.size());
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        List<LinearRegex> linear = new ArrayList<>(rules.size());
+
+        for (R rule : rules) {
+            try {
+                patterns.add(Pattern.compile(rule.getPattern()));
+                // Sin backreferences ni lookaround la regla corre en tiempo lineal
+                linear.add(LinearRegex.compile(rule.getPattern()));
+                valid.add(rule);
+            } catch (PatternSyntaxException e) {
+                errors.add("Regla " + rule.getName() + " (" + language + ") descartada, patrón inválido: "
+                        + e.getDescription());
+            }
+        }
+
+        CompiledRuleSet<R> ruleSet = new CompiledRuleSet<>(valid, patterns.toArray(new Pattern[0]),
+                linear.toArray(new LinearRegex[0]));
+        Log.debug(() -> "Reglas " + language + ": " + ruleSet.size() + ", " + ruleSet.backtracking()
+                + " con backtracking y límite de tiempo");
+        return ruleSet;
+    }
+
+
+    /**
+     * Huella SHA-256 de todas las reglas; cambia si se agrega, quita o modifica cualquier regla
+     */
+    private static String computeVersion(Map<String, ? extends List<? extends Rule>> rules) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String language : new TreeSet<>(rules.keySet())) {
+                update(digest, language);
+                for (Rule rule : rules.get(language)) {
+                    update(digest, rule.getName());
+                    update(digest, rule.getPattern());
+                    update(digest, rule.getLevel());
+                    update(digest, rule.getAdvice());
+                    update(digest, String.valueOf(rule.getScopes()));
+                }
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Versión del conjunto de reglas, usada para invalidar resultados cacheados
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Obtiene el conjunto compilado para una extensión, o null si no hay reglas
+     */
+    public CompiledRuleSet<R> forExtension(String extension) {
+        return ruleSets.get(extension);
+    }
+
+    /**
+     * Reglas abortadas por tiempo desde que arrancó el proceso, en todos los motores
+     */
+    public static long getTimeoutCount() {
+        return TIMEOUTS.sum();
+    }
+
+    /**
+     * Reglas que no pudieron compilarse al cargar el motor
+     */
+    public List<String> getLoadErrors() {
+        return loadErrors;
+    }
+
+    /**
+     * Contadores de cada regla desde el arranque o el último reset; con reset, se ponen
+     * en cero al leerlos
+     */
+    public List<RuleStats> getStats(boolean reset) {
+        // Un conjunto compartido entre extensiones (js/ts) se reporta una vez, con todas ellas
+        Map<CompiledRuleSet<R>, Set<String>> languages = new IdentityHashMap<>();
+        for (Map.Entry<String, CompiledRuleSet<R>> entry : ruleSets.entrySet()) {
+            languages.computeIfAbsent(entry.getValue(), ruleSet -> new TreeSet<>()).add(entry.getKey());
+        }
+        List<RuleStats> stats = new ArrayList<>();
+        for (Map.Entry<CompiledRuleSet<R>, Set<String>> entry : languages.entrySet()) {
+            CompiledRuleSet<R> ruleSet = entry.getKey();
+            String language = String.join("/", entry.getValue());
+            for (int i = 0; i < ruleSet.size(); i++) {
+                stats.add(ruleSet.counters[i].snapshot(owner, language, ruleSet.rules.get(i).getName(),
+                        ruleSet.linear[i] != null, reset));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Contadores de una regla leídos en un momento dado
+     */
+    public static final class RuleStats {
+        final String owner;
+        final String language;
+        final String rule;
+        final boolean linear;
+        final long evaluations;
+        final long matches;
+        final long nanos;
+        final long characters;
+        final long timeouts;
+
+        RuleStats(String owner, String language, String rule, boolean linear, long evaluations, long matches,
+                  long nanos, long characters, long timeouts) {
+            this.owner = owner;
+            this.language = language;
+            this.rule = rule;
+            this.linear = linear;
+            this.evaluations = evaluations;
+            this.matches = matches;
+            this.nanos = nanos;
+            this.characters = characters;
+            this.timeouts = timeouts;
+        }
+    }
+
+    /**
+     * Contadores de una regla. LongAdder reparte las sumas entre celdas por hilo, así los
+     * hilos de escaneo no compiten por la misma línea de caché en cada evaluación
+     */
+    private static final class Counters {
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder matches = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder characters = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+
+        RuleStats snapshot(String owner, String language, String rule, boolean linear, boolean reset) {
+            if (reset) {
+                return new RuleStats(owner, language, rule, linear, evaluations.sumThenReset(), matches.sumThenReset(),
+                        nanos.sumThenReset(), characters.sumThenReset(), timeouts.sumThenReset());
+            }
+            return new RuleStats(owner, language, rule, linear, evaluations.sum(), matches.sum(), nanos.sum(),
+                    characters.sum(), timeouts.sum());
+        }
+    }
+
+    /**
+     * Reglas de un lenguaje ya compiladas. Cada llamada crea sus propios Matcher,
+     * por lo que la instancia puede compartirse entre hilos.
+     */
+    public static final class CompiledRuleSet<R extends Rule> {
+        private final List<R> rules;
+        private final Pattern[] patterns;
+        private final LinearRegex[] linear;  // null donde la regla necesita backtracking
+        private final Counters[] counters;
+        private final long timeoutNanos;
+        private final int[] scopes;
+        private final List<String> literals = new ArrayList<>();
+        private final List<Integer> literalRules = new ArrayList<>();
+        private final long[] alwaysRun;
+        private final AhoCorasick prefilter;
+        private final Map<Charset, AhoCorasick> bytePrefilters = new ConcurrentHashMap<>();
+
+        CompiledRuleSet(List<R> rules, Pattern[] patterns, LinearRegex[] linear) {
+            this.rules = Collections.unmodifiableList(rules);
+            this.patterns = patterns;
+            this.linear = linear;
+            this.counters = new Counters[patterns.length];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new Counters();
+            }
+            this.timeoutNanos = Config.getRuleTimeoutMillis() * 1_000_000L;
+            this.scopes = new int[patterns.length];
+            for (int i = 0; i < scopes.length; i++) {
+                scopes[i] = rules.get(i).getScopes();
+            }
+            this.alwaysRun = new long[Math.max(1, (patterns.length + 63) >>> 6)];
+
+            // Literales obligatorios de cada regla; las que no tienen se evalúan en todas las líneas
+            for (int i = 0; i < rules.size(); i++) {
+                Set<String> required = RegexLiterals.requiredLiterals(rules.get(i).getPattern());
+                if (required == null) {
+                    alwaysRun[i >>> 6] |= 1L << i;
+                    continue;
+                }
+                for (String literal : required) {
+                    literals.add(literal);
+                    literalRules.add(i);
+                }
+            }
+            this.prefilter = buildPrefilter(null);
+        }
+
+        /**
+         * Construye el autómata Aho-Corasick sobre los literales, en chars o en bytes del charset
+         */
+        private AhoCorasick buildPrefilter(Charset charset) {
+            if (literals.isEmpty()) {
+                return null;
+            }
+            List<int[]> keywords = new ArrayList<>(literals.size());
+            int[] ids = new int[literals.size()];
+            for (int i = 0; i < literals.size(); i++) {
+                keywords.add(charset == null
+                        ? AhoCorasick.symbols(literals.get(i))
+                        : AhoCorasick.symbols(literals.get(i), charset));
+                ids[i] = literalRules.get(i);
+            }
+            return new AhoCorasick(keywords, ids, patterns.length);
+        }
+
+        /**
+         * Reglas candidatas para una línea de texto, o null si ninguna puede coincidir
+         */
+        public long[] candidates(CharSequence line) {
+            long[] candidates = alwaysRun.clone();
+            if (prefilter != null) {
+                prefilter.scan(line, 0, line.length(), candidates);
+            }
+            return isEmpty(candidates) ? null : candidates;
+        }
+
+        /**
+         * Reglas candidatas para una línea aún sin decodificar. Válido para charsets en los
+         * que un literal siempre se codifica con los mismos bytes (UTF-8, ISO-8859-1).
+         */
+        public long[] candidates(ByteBuffer buffer, int start, int end, Charset charset) {
+            long[] candidates = alwaysRun.clone();
+            if (!literals.isEmpty()) {
+                bytePrefilters.computeIfAbsent(charset, this::buildPrefilter).scan(buffer, start, end, candidates);
+            }
+            return isEmpty(candidates) ? null : candidates;
+        }
+
+        private static boolean isEmpty(long[] mask) {
+            for (long word : mask) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Devuelve las reglas que encuentran coincidencia en la línea, en orden de definición.
+         * Solo se ejecutan las regex cuyas reglas dispararon el prefiltro de literales.
+         */
+        public List<R> match(CharSequence line) {
+            long[] candidates = candidates(line);
+            return candidates != null ? match(line, candidates) : Collections.emptyList();
+        }
+
+        /**
+         * Ejecuta solo las regex de las reglas candidatas
+         */
+        public List<R> match(CharSequence line, long[] candidates) {
+            return match(line, candidates, null);
+        }
+
+        /**
+         * Como match(line, candidates), pero una coincidencia solo cuenta si empieza en uno
+         * de los ámbitos de su regla; con scopes null cuenta cualquiera
+         */
+        public List<R> match(CharSequence line, long[] candidates, ScopeResolver scopes) {
+            return match(line, candidates, scopes, null);
+        }
+
+        /**
+         * Las reglas con backtracking tienen Config.getRuleTimeoutMillis() por línea; la que
+         * lo excede no cuenta como coincidencia y se agrega a timedOut, si no es null
+         */
+        public List<R> match(CharSequence line, long[] candidates, ScopeResolver scopes, List<R> timedOut) {
+            int lineScopes = scopes != null ? scopes.lineScopes() : SourceTokens.ANY;
+            List<R> matched = null;
+            long clock = System.nanoTime();
+            for (int i = 0; i < patterns.length; i++) {
+                if ((candidates[i >>> 6] & (1L << i)) == 0 || (this.scopes[i] & lineScopes) == 0) {
+                    continue;
+                }
+                Counters counted = counters[i];
+                counted.evaluations.increment();
+                counted.characters.add(line.length());
+                // Si todos los ámbitos de la línea son de la regla, cualquier coincidencia vale
+                ScopeResolver restrict = scopes != null && (lineScopes & ~this.scopes[i]) != 0 ? scopes : null;
+                boolean found;
+                if (linear[i] != null) {
+                    found = linear[i].find(line, 0, restrict, this.scopes[i]) >= 0;
+                } else {
+                    try {
+                        CharSequence input = timeoutNanos > 0 ? new Deadline(line, System.nanoTime() + timeoutNanos) : line;
+                        found = find(patterns[i].matcher(input), this.scopes[i], restrict);
+                    } catch (MatchTimeout e) {
+                        long now = System.nanoTime();
+                        counted.nanos.add(now - clock);
+                        counted.timeouts.increment();
+                        TIMEOUTS.increment();
+                        clock = now;
+                        Log.warn("⏱️ Regla " + rules.get(i).getName() + " abortada: superó " + timeoutNanos / 1_000_000
+                                + " ms en una línea de " + line.length() + " caracteres");
+                        if (timedOut != null) {
+                            timedOut.add(rules.get(i));
+                        }
+                        continue;
+                    }
+                }
+                // Un solo nanoTime por regla: el fin de una evaluación es el inicio de la siguiente
+                long now = System.nanoTime();
+                counted.nanos.add(now - clock);
+                clock = now;
+                if (found) {
+                    counted.matches.increment();
+                    if (matched == null) {
+                        matched = new ArrayList<>(2);
+                    }
+                    matched.add(rules.get(i));
+                }
+            }
+            return matched != null ? matched : Collections.emptyList();
+        }
+
+        /**
+         * Busca la primera coincidencia que empiece dentro de los ámbitos de la regla
+         */
+        private static boolean find(Matcher matcher, int ruleScopes, ScopeResolver scopes) {
+            if (!matcher.find()) {
+                return false;
+            }
+            if (scopes == null) {
+                return true;
+            }
+            int length = matcher.regionEnd();
+            while ((scopes.scopeAt(matcher.start()) & ruleScopes) == 0) {
+                int next = matcher.start() + 1;
+                if (next > length || !matcher.find(next)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public List<R> getRules() {
+            return rules;
+        }
+
+        public int size() {
+            return patterns.length;
+        }
+
+        /**
+         * Reglas que no pudieron pasar al motor lineal
+         */
+        int backtracking() {
+            int count = 0;
+            for (LinearRegex regex : linear) {
+                if (regex == null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Texto de la línea con un plazo: java.util.regex lo lee con charAt, así una regex
+     * con backtracking catastrófico se interrumpe en lugar de bloquear el escaneo
+     */
+    private static final class Deadline implements CharSequence {
+        private final CharSequence text;
+        private final long deadline;
+        private int reads;
+
+        Deadline(CharSequence text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            // nanoTime cada 1024 lecturas: el costo queda en el ruido
+            if ((++reads & 0x3FF) == 0 && System.nanoTime() - deadline > 0) {
+                throw MatchTimeout.INSTANCE;
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static final class MatchTimeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final MatchTimeout INSTANCE = new MatchTimeout();
+
+        private MatchTimeout() {
+            super("tiempo de la regla agotado", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.example.mcp;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché incremental en disco de los hallazgos por archivo. Cada entrada guarda
+ * tamaño, mtime y hash SHA-256 del contenido; si tamaño y mtime coinciden el archivo
+ * ni siquiera se lee, y si solo cambió el mtime basta con comparar el hash.
+ * Toda la caché se descarta cuando cambia la versión de las reglas. Los archivos con
+ * reglas abortadas por tiempo no se guardan: el resultado dependió de la carga del momento.
+ *
+ * Se guarda un JSON por analizador y repositorio en Config.getCacheDirectory()
+ * y se mantiene en memoria entre llamadas.
+ */
+final class ScanCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<Path, ScanCache> OPEN = new ConcurrentHashMap<>();
+    private static final ScanCache DISABLED = new ScanCache(null, null, null);
+
+    // mtimes más recientes que esto no son fiables: el archivo podría cambiar dentro del mismo tick
+    private static final long RACY_MTIME_MILLIS = 2000;
+
+    private final Path root;
+    private final Path cacheFile;
+    private final String version;
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private ScanCache(Path root, Path cacheFile, String version) {
+        this.root = root;
+        this.cacheFile = cacheFile;
+        this.version = version;
+    }
+
+    /**
+     * Obtiene la caché de un analizador para un repositorio, o una caché inactiva
+     * si está deshabilitada en Config o la raíz es un único archivo
+     */
+    static ScanCache forRepository(Path repoRoot, String analyzer, String version) {
+        if (!Config.isCacheEnabled() || !Files.isDirectory(repoRoot)) {
+            return DISABLED;
+        }
+        Path root = repoRoot.toAbsolutePath().normalize();
+        String name = analyzer + "-" + Integer.toHexString(root.toString().hashCode()) + ".json";
+        Path cacheFile = Config.getCacheDirectory(root).resolve(name).toAbsolutePath().normalize();
+
+        return OPEN.compute(cacheFile, (key, existing) ->
+            existing != null && existing.version.equals(version) ? existing : load(root, cacheFile, version));
+    }
+
+    private static ScanCache load(Path root, Path cacheFile, String version) {
+        ScanCache cache = new ScanCache(root, cacheFile, version);
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                CacheFile stored = MAPPER.readValue(cacheFile.toFile(), CacheFile.class);
+                // Si las reglas cambiaron se ignora todo el contenido
+                if (version.equals(stored.version) && stored.entries != null) {
+                    cache.entries.putAll(stored.entries);
+                }
+            } catch (IOException e) {
+                Log.warn("⚠️ Caché de escaneo ilegible, se reconstruye: " + e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Etapa de lectura: consulta tamaño y mtime y, solo si no basta con eso, mapea el archivo
+     */
+    Input prepare(Path file, Charset charset) throws IOException {
+        if (this == DISABLED) {
+            return uncached(MappedLines.map(file, charset));
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long mtime = attributes.lastModifiedTime().toMillis();
+        String key = keyOf(file);
+        CacheEntry entry = entries.get(key);
+
+        if (entry != null && entry.size == size && entry.mtime == mtime) {
+            return new Input(key, null, entry, size, mtime);
+        }
+        return new Input(key, MappedLines.map(file, charset), entry, size, mtime);
+    }
+
+    /**
+     * Contenido que no proviene del working tree (p.ej. un blob del index de git): se analiza sin caché
+     */
+    static Input uncached(MappedLines lines) {
+        return new Input(null, lines, null, 0, 0);
+    }
+
+    /**
+     * Etapa de matching: sirve los hallazgos desde la caché si el contenido no cambió,
+     * o ejecuta el scanner y guarda el resultado. Al terminar libera el contenido leído
+     */
+    void complete(Path file, Input input, ScanPipeline.ContentMatcher<MappedLines> scanner, FindingStore findings) {
+        try {
+            match(file, input, scanner, findings);
+        } finally {
+            input.release();
+        }
+    }
+
+    private void match(Path file, Input input, ScanPipeline.ContentMatcher<MappedLines> scanner, FindingStore findings) {
+        if (input.key == null) {
+            scanner.match(file, input.lines, findings);
+            return;
+        }
+
+        if (input.lines == null) {
+            decode(file, input.entry, findings);
+            return;
+        }
+
+        String hash = input.lines.contentHash();
+        long mtime = isRacy(input.mtime) ? -1 : input.mtime;
+        if (input.entry != null && hash.equals(input.entry.hash)) {
+            entries.put(input.key, new CacheEntry(input.size, mtime, hash, input.entry.findings));
+            dirty = true;
+            decode(file, input.entry, findings);
+            return;
+        }
+
+        FindingStore scanned = new FindingStore();
+        scanner.match(file, input.lines, scanned);
+        if (hasTimeout(scanned)) {
+            // Se vuelve a escanear la próxima vez; la entrada anterior ya no corresponde al contenido
+            if (entries.remove(input.key) != null) {
+                dirty = true;
+            }
+            findings.addAll(scanned);
+            return;
+        }
+        List<CachedFinding> encoded = new ArrayList<>(scanned.size());
+        for (int i = 0; i < scanned.size(); i++) {
+            encoded.add(new CachedFinding(scanned.getName(i), scanned.getLevel(i), scanned.getAdvice(i),
+                scanned.getLine(i), scanned.getLiteralCode(i), scanned.getCodeStart(i), scanned.getCodeEnd(i)));
+        }
+        entries.put(input.key, new CacheEntry(input.size, mtime, hash, encoded));
+        dirty = true;
+        findings.addAll(scanned);
+    }
+
+    private static boolean hasTimeout(FindingStore scanned) {
+        for (int i = 0; i < scanned.size(); i++) {
+            if (RuleEngine.TIMEOUT_FINDING.equals(scanned.getName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void decode(Path file, CacheEntry entry, FindingStore findings) {
+        for (CachedFinding finding : entry.findings) {
+            if (finding.code != null) {
+                findings.add(file, finding.name, finding.level, finding.advice, finding.line, finding.code);
+            } else {
+                // El hash coincide, así que el rango sigue apuntando a la misma línea
+                findings.add(file, finding.name, finding.level, finding.advice, finding.line, finding.start, finding.end);
+            }
+        }
+    }
+
+    /**
+     * Si el mtime cae en el tick actual: un cambio inmediato podría no moverlo
+     */
+    static boolean isRacy(long mtime) {
+        return System.currentTimeMillis() - mtime < RACY_MTIME_MILLIS;
+    }
+
+    private String keyOf(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        return absolute.startsWith(root) ? root.relativize(absolute).toString() : absolute.toString();
+    }
+
+    /**
+     * Persiste la caché si hubo cambios; un fallo de escritura no interrumpe el escaneo
+     */
+    void save() {
+        if (this == DISABLED || !dirty) {
+            return;
+        }
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            // Olvidar archivos que ya no existen
+            entries.keySet().removeIf(key -> !Files.exists(root.resolve(key)));
+
+            CacheFile stored = new CacheFile();
+            stored.version = version;
+            stored.root = root.toString();
+            stored.entries = new TreeMap<>(entries);
+
+            try {
+                Files.createDirectories(cacheFile.getParent());
+                // Que git ignore la caché cuando vive dentro del repositorio
+                Path ignore = cacheFile.getParent().resolve(".gitignore");
+                if (!Files.exists(ignore)) {
+                    Files.write(ignore, "*\n".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                }
+                Path temp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+                try {
+                    MAPPER.writeValue(temp.toFile(), stored);
+                    try {
+                        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                dirty = true;
+                Log.warn("⚠️ No se pudo guardar la caché de escaneo: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Resultado de la etapa de lectura: el contenido mapeado o una entrada ya válida
+     */
+    static final class Input {
+        final String key;
+        final MappedLines lines;
+        final CacheEntry entry;
+        final long size, mtime;
+
+        Input(String key, MappedLines lines, CacheEntry entry, long size, long mtime) {
+            this.key = key;
+            this.lines = lines;
+            this.entry = entry;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        /**
+         * Bytes leídos del disco para esta entrada (0 si se resolvió solo con metadatos)
+         */
+        long bytesRead() {
+            return lines != null ? lines.size() : 0;
+        }
+
+        /**
+         * Memoria que retiene el contenido leído hasta release()
+         */
+        long residentBytes() {
+            return lines != null ? lines.residentBytes() : 0;
+        }
+
+        /**
+         * Libera el contenido leído; se llama también si el archivo no llega a analizarse
+         */
+        void release() {
+            if (lines != null) {
+                lines.release();
+            }
+        }
+    }
+
+    static final class CacheFile {
+        @JsonProperty("version")
+        String version;
+
+        @JsonProperty("root")
+        String root;
+
+        @JsonProperty("entries")
+        Map<String, CacheEntry> entries;
+    }
+
+    static final class CacheEntry {
+        @JsonProperty("size")
+        long size;
+
+        @JsonProperty("mtime")
+        long mtime;
+
+        @JsonProperty("hash")
+        String hash;
+
+        @JsonProperty("findings")
+        List<CachedFinding> findings;
+
+        CacheEntry() {}
+
+        CacheEntry(long size, long mtime, String hash, List<CachedFinding> findings) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+            this.findings = findings;
+        }
+    }
+
+    /**
+     * Hallazgo cacheado, sin el path del archivo (lo aporta la entrada). El código se guarda
+     * como rango en bytes del archivo, o como texto cuando no puede releerse de él
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class CachedFinding {
+        @JsonProperty("name")
+        String name;
+
+        @JsonProperty("level")
+        String level;
+
+        @JsonProperty("advice")
+        String advice;
+
+        @JsonProperty("line")
+        int line;
+
+        @JsonProperty("code")
+        String code;
+
+        @JsonProperty("start")
+        int start;
+
+        @JsonProperty("end")
+        int end;
+
+        CachedFinding() {}
+
+        CachedFinding(String name, String level, String advice, int line, String code, int start, int end) {
+            this.name = name;
+            this.level = level;
+            this.advice = advice;
+            this.line = line;
+            this.code = code;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Pipeline de escaneo por etapas conectadas con colas acotadas:
+ * descubrimiento de archivos, lectura (I/O, muchas lecturas en curso),
+ * matching de reglas (CPU, pool fijo de hilos de plataforma) y recolección.
+ * Las colas llenas frenan a la etapa anterior. Si la cola de contenidos leídos
+ * se mantiene llena el escaneo está limitado por CPU; si se vacía mientras hay
+ * muchas lecturas en curso, está limitado por I/O.
+ *
+ * Además de por número de archivos, la lectura está acotada por bytes en memoria
+ * (Config.getReadMaxBytes()): cada lectura reserva antes de empezar lo que retendrá
+ * el archivo cargado (MappedLines.residentSize) y lo devuelve cuando el matcher
+ * termina con él. Un archivo mayor que el límite se lee igual, pero solo.
+ */
+final class ScanPipeline<C> {
+    private static final Object END = new Object();
+
+    /**
+     * Etapa de descubrimiento: entrega cada archivo a escanear al sink
+     */
+    interface Discovery {
+        void discover(Consumer<Path> sink) throws IOException;
+    }
+
+    /**
+     * Etapa de lectura: obtiene el contenido del archivo (solo I/O)
+     */
+    interface ContentReader<C> {
+        C read(Path file) throws IOException;
+    }
+
+    /**
+     * Etapa de matching: analiza el contenido ya leído (solo CPU)
+     */
+    interface ContentMatcher<C> {
+        void match(Path file, C content, FindingStore findings);
+    }
+
+    private final ContentReader<C> reader;
+    private final ContentMatcher<C> matcher;
+    private final ToLongFunction<C> sizeOf;
+    private final Consumer<C> release;
+    private final int matchWorkers;
+    private final int readConcurrency;
+
+    private final BlockingQueue<Object> discovered;
+    private final BlockingQueue<Object> loaded;
+    private final BlockingQueue<Object> matched;
+    private final Semaphore readPermits;
+    private final Semaphore readKilobytes;
+    private final int maxReadKilobytes;
+    private volatile boolean closed;
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger discoveredCount = new AtomicInteger();
+    private final AtomicInteger readCount = new AtomicInteger();
+    private final AtomicInteger matchedCount = new AtomicInteger();
+    private final AtomicInteger maxDiscoveredDepth = new AtomicInteger();
+    private final AtomicInteger maxReadsInFlight = new AtomicInteger();
+    private final AtomicInteger maxLoadedDepth = new AtomicInteger();
+    private final AtomicInteger maxMatchedDepth = new AtomicInteger();
+
+    /**
+     * sizeOf da los bytes que un contenido leído retiene en memoria; release libera uno
+     * que no llegará al matcher (cancelación o error). El matcher libera los que recibe
+     */
+    ScanPipeline(ContentReader<C> reader, ContentMatcher<C> matcher, ToLongFunction<C> sizeOf, Consumer<C> release) {
+        this.reader = reader;
+        this.matcher = matcher;
+        this.sizeOf = sizeOf;
+        this.release = release;
+        this.matchWorkers = Config.getScanWorkers();
+        this.readConcurrency = Config.getReadConcurrency();
+        int capacity = Math.max(16, matchWorkers * 4);
+        this.discovered = new ArrayBlockingQueue<>(Math.max(capacity, readConcurrency));
+        this.loaded = new ArrayBlockingQueue<>(capacity);
+        this.matched = new ArrayBlockingQueue<>(capacity);
+        this.readPermits = new Semaphore(readConcurrency);
+        this.maxReadKilobytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Config.getReadMaxBytes() / 1024));
+        this.readKilobytes = new Semaphore(maxReadKilobytes);
+    }
+
+    /**
+     * Ejecuta el pipeline completo y devuelve los hallazgos ordenados por path. Al cancelar,
+     * el hilo que espera los resultados se despierta y detiene todas las etapas
+     */
+    FindingStore run(CancellationToken cancellation, Discovery discovery) throws IOException {
+        ExecutorService readers = newReadExecutor(readConcurrency);
+        ExecutorService matchers = Executors.newFixedThreadPool(matchWorkers, daemonFactory("scan-match-"));
+
+        Thread discoveryThread = new Thread(() -> {
+            try {
+                discovery.discover(file -> {
+                    discoveredCount.incrementAndGet();
+                    put(discovered, file, maxDiscoveredDepth);
+                });
+            } catch (IOException | RuntimeException e) {
+                failures.add(e);
+            } finally {
+                putQuietly(discovered, END);
+            }
+        }, "scan-discovery");
+        discoveryThread.setDaemon(true);
+
+        Thread dispatchThread = new Thread(() -> dispatchReads(readers), "scan-read-dispatch");
+        dispatchThread.setDaemon(true);
+
+        for (int i = 0; i < matchWorkers; i++) {
+            matchers.execute(this::matchLoop);
+        }
+        discoveryThread.start();
+        dispatchThread.start();
+
+        Thread collector = Thread.currentThread();
+        CancellationToken.Registration interruptOnCancel = cancellation.onCancel(collector::interrupt);
+        try {
+            // Etapa de recolección
+            Map<Path, FindingStore> byFile = new TreeMap<>(ScanScheduler.SCAN_ORDER);
+            int finishedWorkers = 0;
+            while (finishedWorkers < matchWorkers) {
+                Object item = matched.take();
+                if (item == END) {
+                    finishedWorkers++;
+                } else {
+                    Matched result = (Matched) item;
+                    byFile.put(result.file, result.findings);
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                Throwable failure = failures.get(0);
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+            }
+
+            FindingStore findings = new FindingStore();
+            for (FindingStore fileFindings : byFile.values()) {
+                findings.addAll(fileFindings);
+            }
+            return findings;
+        } catch (InterruptedException e) {
+            if (cancellation.isCancelled()) {
+                throw new CancellationException("Escaneo cancelado");
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Escaneo interrumpido", e);
+        } finally {
+            interruptOnCancel.close();
+            if (cancellation.isCancelled()) {
+                // Una cancelación que llegó justo al terminar no debe dejar interrumpido al llamador
+                Thread.interrupted();
+            }
+            discoveryThread.interrupt();
+            dispatchThread.interrupt();
+            readers.shutdownNow();
+            matchers.shutdownNow();
+            // Lo leído que quedó en cola no pasará por el matcher; una lectura que lo encole
+            // después de esto lo descarta ella misma al ver closed
+            closed = true;
+            discardLoaded();
+        }
+    }
+
+    private void dispatchReads(ExecutorService readers) {
+        try {
+            while (true) {
+                Object item = discovered.take();
+                if (item == END) {
+                    break;
+                }
+                Path file = (Path) item;
+                readPermits.acquire();
+                maxReadsInFlight.accumulateAndGet(readConcurrency - readPermits.availablePermits(), Math::max);
+                readers.execute(() -> {
+                    try {
+                        read(file);
+                    } finally {
+                        readPermits.release();
+                    }
+                });
+            }
+            // Esperar a que terminen todas las lecturas antes de cerrar la etapa de matching
+            readPermits.acquire(readConcurrency);
+            readPermits.release(readConcurrency);
+            for (int i = 0; i < matchWorkers; i++) {
+                loaded.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void read(Path file) {
+        int reserved = 0;
+        try {
+            int expected = kilobytes(MappedLines.residentSize(sizeOnDisk(file)));
+            readKilobytes.acquire(expected);
+            reserved = expected;
+            C content = reader.read(file);
+            readCount.incrementAndGet();
+
+            // Se retiene lo que ocupa el contenido (nada si la caché lo resolvió sin leer)
+            int held = Math.min(reserved, kilobytes(sizeOf.applyAsLong(content)));
+            readKilobytes.release(reserved - held);
+            reserved = 0;
+            Loaded<C> entry = new Loaded<>(file, content, held);
+            try {
+                put(loaded, entry, maxLoadedDepth);
+            } catch (CancellationException e) {
+                discard(entry); // El pipeline se está deteniendo
+                return;
+            }
+            if (closed) {
+                discardLoaded();
+            }
+        } catch (IOException e) {
+            // Ignorar archivos no legibles
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readKilobytes.release(reserved);
+        }
+    }
+
+    private static long sizeOnDisk(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0; // Sin archivo en disco (p.ej. un blob del index): solo cuenta por número
+        }
+    }
+
+    private int kilobytes(long bytes) {
+        return (int) Math.min(maxReadKilobytes, (bytes + 1023) / 1024);
+    }
+
+    private void discardLoaded() {
+        List<Object> pending = new ArrayList<>();
+        loaded.drainTo(pending);
+        for (Object item : pending) {
+            if (item != END) {
+                @SuppressWarnings("unchecked")
+                Loaded<C> entry = (Loaded<C>) item;
+                discard(entry);
+            }
+        }
+    }
+
+    private void discard(Loaded<C> entry) {
+        try {
+            release.accept(entry.content);
+        } finally {
+            readKilobytes.release(entry.held);
+        }
+    }
+
+    private void matchLoop() {
+        try {
+            while (true) {
+                Object item = loaded.take();
+                if (item == END) {
+                    matched.put(END);
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                Loaded<C> entry = (Loaded<C>) item;
+                FindingStore findings = new FindingStore();
+                try {
+                    matcher.match(entry.file, entry.content, findings);
+                } catch (RuntimeException e) {
+                    // Se reporta al terminar; el resto de archivos sigue su curso
+                    failures.add(e);
+                } finally {
+                    readKilobytes.release(entry.held);
+                }
+                matchedCount.incrementAndGet();
+                put(matched, new Matched(entry.file, findings), maxMatchedDepth);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item, AtomicInteger highWater) {
+        try {
+            queue.put(item);
+            highWater.accumulateAndGet(queue.size(), Math::max);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Escaneo interrumpido");
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Estado actual de las colas de cada etapa
+     */
+    Stats snapshot() {
+        return new Stats(
+            discoveredCount.get(), readCount.get(), matchedCount.get(),
+            discovered.size(), readConcurrency - readPermits.availablePermits(), loaded.size(), matched.size(),
+            maxDiscoveredDepth.get(), maxReadsInFlight.get(), maxLoadedDepth.get(), maxMatchedDepth.get()
+        );
+    }
+
+    /**
+     * Usa hilos virtuales (JDK 21+) para la lectura cuando están disponibles;
+     * en JDKs anteriores recurre a un pool de hilos de plataforma
+     */
+    private static ExecutorService newReadExecutor(int readConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.min(readConcurrency, 64), daemonFactory("scan-read-"));
+        }
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Loaded<C> {
+        final Path file;
+        final C content;
+        final int held;   // KB reservados en readKilobytes
+
+        Loaded(Path file, C content, int held) {
+            this.file = file;
+            this.content = content;
+            this.held = held;
+        }
+    }
+
+    private static final class Matched {
+        final Path file;
+        final FindingStore findings;
+
+        Matched(Path file, FindingStore findings) {
+            this.file = file;
+            this.findings = findings;
+        }
+    }
+
+    /**
+     * Profundidad de cola por etapa (actual y máxima) y archivos procesados
+     */
+    static final class Stats {
+        final int discoveredFiles, readFiles, matchedFiles;
+        final int discoveredDepth, readsInFlight, loadedDepth, matchedDepth;
+        final int maxDiscoveredDepth, maxReadsInFlight, maxLoadedDepth, maxMatchedDepth;
+
+        Stats(int discoveredFiles, int readFiles, int matchedFiles,
+              int discoveredDepth, int readsInFlight, int loadedDepth, int matchedDepth,
+              int maxDiscoveredDepth, int maxReadsInFlight, int maxLoadedDepth, int maxMatchedDepth) {
+            this.discoveredFiles = discoveredFiles;
+            this.readFiles = readFiles;
+            this.matchedFiles = matchedFiles;
+            this.discoveredDepth = discoveredDepth;
+            this.readsInFlight = readsInFlight;
+            this.loadedDepth = loadedDepth;
+            this.matchedDepth = matchedDepth;
+            this.maxDiscoveredDepth = maxDiscoveredDepth;
+            this.maxReadsInFlight = maxReadsInFlight;
+            this.maxLoadedDepth = maxLoadedDepth;
+            this.maxMatchedDepth = maxMatchedDepth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "archivos descubiertos=%d leídos=%d analizados=%d | cola descubrimiento=%d (máx %d), "
+                    + "lecturas en curso=%d (máx %d), cola matching=%d (máx %d), cola resultados=%d (máx %d)",
+                discoveredFiles, readFiles, matchedFiles,
+                discoveredDepth, maxDiscoveredDepth, readsInFlight, maxReadsInFlight,
+                loadedDepth, maxLoadedDepth, matchedDepth, maxMatchedDepth);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.mcp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de avance de un escaneo en curso. Los analizadores los actualizan
+ * desde sus hilos de trabajo y el listener recibe el estado como mucho una vez
+ * por intervalo (Config.getProgressIntervalMillis()), más una última vez al terminar;
+ * así las notificaciones nunca compiten con la salida real.
+ */
+final class ScanProgress {
+    static final ScanProgress NONE = new ScanProgress(null, Long.MAX_VALUE);
+
+    /**
+     * Recibe el estado del escaneo; se invoca desde los hilos de trabajo
+     */
+    interface Listener {
+        void onProgress(ScanProgress progress);
+    }
+
+    private final Listener listener;
+    private final long intervalNanos;
+    private final AtomicLong filesDiscovered = new AtomicLong();
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong findings = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong lastEmit = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean discoveryDone = new AtomicBoolean();
+
+    private ScanProgress(Listener listener, long intervalNanos) {
+        this.listener = listener;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Crea un seguimiento que notifica al listener con el intervalo configurado
+     */
+    static ScanProgress reportingTo(Listener listener) {
+        return new ScanProgress(listener, Config.getProgressIntervalMillis() * 1_000_000L);
+    }
+
+    void filesDiscovered(int count) {
+        if (listener == null) return;
+        filesDiscovered.addAndGet(count);
+        maybeEmit();
+    }
+
+    /**
+     * Marca el fin del descubrimiento: a partir de aquí se conoce el total
+     */
+    void discoveryFinished() {
+        if (listener == null) return;
+        discoveryDone.set(true);
+    }
+
+    void fileScanned(long bytes, int fileFindings) {
+        if (listener == null) return;
+        filesScanned.incrementAndGet();
+        bytesRead.addAndGet(bytes);
+        findings.addAndGet(fileFindings);
+        maybeEmit();
+    }
+
+    /**
+     * Emite el estado final sin esperar al intervalo
+     */
+    void finish() {
+        if (listener == null) return;
+        discoveryDone.set(true);
+        lastEmit.set(System.nanoTime());
+        emit();
+    }
+
+    private void maybeEmit() {
+        long now = System.nanoTime();
+        long last = lastEmit.get();
+        // Solo el hilo que gana el CAS notifica; el resto sigue escaneando sin esperar
+        if (now - last >= intervalNanos && lastEmit.compareAndSet(last, now)) {
+            emit();
+        }
+    }
+
+    /**
+     * Los contadores solo crecen: leyéndolos de a una notificación por vez, el progreso
+     * reportado nunca retrocede
+     */
+    private synchronized void emit() {
+        listener.onProgress(this);
+    }
+
+    long getFilesDiscovered() { return filesDiscovered.get(); }
+
+    long getFilesScanned() { return filesScanned.get(); }
+
+    long getFindings() { return findings.get(); }
+
+    long getBytesRead() { return bytesRead.get(); }
+
+    /**
+     * Total de archivos, o -1 mientras el descubrimiento sigue en curso
+     */
+    long getTotal() {
+        return discoveryDone.get() ? filesDiscovered.get() : -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("archivos descubiertos=%d analizados=%d hallazgos=%d bytes leídos=%d",
+            getFilesDiscovered(), getFilesScanned(), getFindings(), getBytesRead());
+    }
+}
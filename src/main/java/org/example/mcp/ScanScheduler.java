@@ -0,0 +1,302 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Planificador de escaneos por presupuesto. En lugar de cortar a 50 archivos o
+ * 1000 líneas, cada llamada analiza archivos en un orden fijo (por segmentos de
+ * path) hasta agotar su presupuesto de tiempo, bytes o hallazgos, y devuelve un
+ * cursor con el primer archivo no cubierto. La siguiente llamada con ese cursor
+ * continúa exactamente desde ahí: los resultados de una llamada son siempre un
+ * prefijo completo del orden, así que no hay huecos ni duplicados.
+ *
+ * Un archivo nunca se parte: el presupuesto se comprueba al descubrirlo y otra vez
+ * antes de analizarlo. El primer archivo de cada llamada siempre se analiza, de
+ * modo que cada cursor avanza aunque el presupuesto sea mínimo.
+ */
+final class ScanScheduler {
+    /**
+     * Orden de escaneo: compara los paths segmento a segmento, igual que un recorrido
+     * en profundidad con los hijos de cada directorio ordenados por nombre
+     */
+    static final Comparator<Path> SCAN_ORDER = (a, b) -> {
+        int common = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < common; i++) {
+            int c = a.getName(i).compareTo(b.getName(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    };
+
+    private final long deadlineNanos;
+    private final long maxBytes;
+    private final long maxFindings;
+    private final String cursor;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong findings = new AtomicLong();
+    private final AtomicReference<Path> stopAt = new AtomicReference<>();
+    private volatile String exhaustedBy;
+    private volatile Path root;
+    private volatile Path resumeFrom;
+    private volatile Path firstAdmitted;
+    private volatile Path scanCache;
+    private volatile ResultCache.Snapshot snapshot;
+
+    private ScanScheduler(long budgetMillis, long maxBytes, long maxFindings, String cursor) {
+        this.deadlineNanos = System.nanoTime() + budgetMillis * 1_000_000L;
+        this.maxBytes = maxBytes;
+        this.maxFindings = maxFindings;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Presupuestos de Config, sin cursor
+     */
+    static ScanScheduler fromConfig() {
+        return create(null, null, null, null);
+    }
+
+    /**
+     * Presupuestos de la petición; los valores null toman el de Config
+     */
+    static ScanScheduler create(Long budgetMillis, Long maxBytes, Long maxFindings, String cursor) {
+        return new ScanScheduler(
+            budgetMillis != null ? budgetMillis : Config.getScanBudgetMillis(),
+            maxBytes != null ? maxBytes : Config.getScanBudgetBytes(),
+            maxFindings != null ? maxFindings : Config.getScanBudgetFindings(),
+            cursor == null || cursor.trim().isEmpty() ? null : cursor.trim());
+    }
+
+    boolean hasCursor() {
+        return cursor != null;
+    }
+
+    /**
+     * Desde ahora anota en el snapshot cada directorio que liste walk y cada archivo que
+     * admita, antes de leerlos, para que ResultCache compruebe luego que siguen igual
+     */
+    ResultCache.Snapshot recordSnapshot() {
+        snapshot = new ResultCache.Snapshot();
+        return snapshot;
+    }
+
+    /**
+     * Comienza el escaneo de un directorio raíz y resuelve el cursor respecto a él
+     */
+    private void begin(Path dir) {
+        root = dir;
+        resumeFrom = cursor != null ? dir.resolve(decodeCursor(cursor)).normalize() : null;
+        firstAdmitted = null;
+        scanCache = Config.getCacheDirectory(dir).toAbsolutePath().normalize();
+        stopAt.set(null);
+    }
+
+    /**
+     * Recorre dir en orden de escaneo desde el cursor, entregando al sink los archivos
+     * que pasan el filtro mientras quede presupuesto. Si dir es un archivo, es lo único
+     * que se ofrece
+     */
+    void walk(Path dir, int maxDepth, Predicate<Path> filter, Consumer<Path> sink) throws IOException {
+        begin(dir);
+        if (Files.isRegularFile(dir)) {
+            offerFile(dir, filter, sink);
+            return;
+        }
+        walkDirectory(dir, 0, maxDepth, filter, sink);
+    }
+
+    private boolean walkDirectory(Path dir, int depth, int maxDepth, Predicate<Path> filter,
+                                  Consumer<Path> sink) throws IOException {
+        ResultCache.Snapshot recording = snapshot;
+        if (recording != null) {
+            recording.add(dir);
+        }
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(dir)) {
+            children = stream.sorted(Comparator.comparing(Path::getFileName)).collect(Collectors.toList());
+        } catch (IOException e) {
+            if (depth == 0) {
+                throw e;
+            }
+            return true; // Ignorar directorios no legibles
+        }
+
+        for (Path child : children) {
+            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // .git y la caché de escaneos nunca contienen fuentes; los subárboles ya cubiertos
+                // por el cursor se saltan enteros
+                if (depth + 1 >= maxDepth || ".git".equals(child.getFileName().toString())
+                        || child.toAbsolutePath().normalize().equals(scanCache) || isBeforeCursor(child)) {
+                    continue;
+                }
+                if (!walkDirectory(child, depth + 1, maxDepth, filter, sink)) {
+                    return false;
+                }
+            } else if (!offerFile(child, filter, sink)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Igual que walk pero sobre una lista ya conocida (p.ej. los archivos modificados según git)
+     */
+    void offer(Path dir, List<Path> files, Predicate<Path> filter, Consumer<Path> sink) {
+        begin(dir);
+        List<Path> ordered = new ArrayList<>(files);
+        ordered.sort(SCAN_ORDER);
+        for (Path file : ordered) {
+            if (!offerFile(file, filter, sink)) {
+                return;
+            }
+        }
+    }
+
+    private boolean offerFile(Path file, Predicate<Path> filter, Consumer<Path> sink) {
+        if (resumeFrom != null && SCAN_ORDER.compare(file, resumeFrom) < 0) {
+            return true;
+        }
+        if (!filter.test(file)) {
+            return true;
+        }
+
+        String reason = exhaustion(true);
+        if (reason != null && firstAdmitted != null) {
+            stop(file, reason);
+            return false;
+        }
+        if (firstAdmitted == null) {
+            firstAdmitted = file;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            bytes.addAndGet(attributes.size());
+            ResultCache.Snapshot recording = snapshot;
+            if (recording != null) {
+                recording.add(file, attributes);
+            }
+        } catch (IOException e) {
+            // Sin tamaño (p.ej. solo existe en el index): no consume presupuesto de bytes
+        }
+        sink.accept(file);
+        return true;
+    }
+
+    private boolean isBeforeCursor(Path dir) {
+        Path resume = resumeFrom;
+        return resume != null && !resume.startsWith(dir) && SCAN_ORDER.compare(dir, resume) < 0;
+    }
+
+    /**
+     * Se consulta justo antes de analizar un archivo ya descubierto; si el tiempo o los
+     * hallazgos se agotaron mientras esperaba en cola, queda sin analizar para la próxima llamada
+     */
+    boolean canScan(Path file) {
+        if (file.equals(firstAdmitted)) {
+            return true;
+        }
+        String reason = exhaustion(false);
+        if (reason != null) {
+            stop(file, reason);
+            return false;
+        }
+        return true;
+    }
+
+    void addFindings(int count) {
+        findings.addAndGet(count);
+    }
+
+    private String exhaustion(boolean includeBytes) {
+        if (System.nanoTime() - deadlineNanos >= 0) {
+            return "tiempo";
+        }
+        if (findings.get() >= maxFindings) {
+            return "hallazgos";
+        }
+        if (includeBytes && bytes.get() >= maxBytes) {
+            return "bytes";
+        }
+        return null;
+    }
+
+    private void stop(Path file, String reason) {
+        exhaustedBy = reason;
+        stopAt.accumulateAndGet(file, (current, candidate) ->
+            current == null || SCAN_ORDER.compare(candidate, current) < 0 ? candidate : current);
+    }
+
+    /**
+     * Descarta los hallazgos de archivos posteriores al punto de corte: se volverán a
+     * analizar en la siguiente llamada
+     */
+    void retainCompleted(FindingStore found) {
+        Path stop = stopAt.get();
+        if (stop != null) {
+            found.retain(row -> SCAN_ORDER.compare(found.getPath(row), stop) < 0);
+        }
+    }
+
+    boolean isTruncated() {
+        return exhaustedBy != null;
+    }
+
+    /**
+     * Cursor opaco para reanudar, o null si el escaneo cubrió todo
+     */
+    String getNextCursor() {
+        Path stop = stopAt.get();
+        if (stop == null) {
+            return null;
+        }
+        StringJoiner relative = new StringJoiner("/");
+        for (Path name : root.relativize(stop)) {
+            relative.add(name.toString());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(relative.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        String relative;
+        try {
+            relative = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("cursor inválido: " + cursor);
+        }
+        if (relative.isEmpty() || relative.startsWith("/") || Arrays.asList(relative.split("/")).contains("..")) {
+            throw new IllegalArgumentException("cursor inválido: " + cursor);
+        }
+        return relative;
+    }
+
+    /**
+     * Pie para los reportes: estado del presupuesto y cursor para continuar
+     */
+    String describe() {
+        if (!isTruncated()) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        result.append("\n⏭️ Escaneo parcial: presupuesto de ").append(exhaustedBy).append(" agotado\n");
+        String next = getNextCursor();
+        if (next != null) {
+            result.append("🔖 cursor: ").append(next).append("\n");
+            result.append("💡 Repite la llamada con este cursor para continuar desde el siguiente archivo.\n");
+        }
+        return result.toString();
+    }
+}
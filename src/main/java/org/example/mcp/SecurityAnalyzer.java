@@ -3,25 +3,38 @@ package org.example.mcp;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class SecurityAnalyzer {
-    private final Map<String, List<SecurityRule>> rules;
+    // Incrementar cuando cambie la lógica de escaneo para invalidar la caché en disco
+    private static final int SCAN_LOGIC_VERSION = 2;
+    
+    private final RuleEngine<SecurityRule> ruleEngine;
+    private final ResultStore results;
+    private volatile ScanPipeline.Stats lastPipelineStats;
     
     public SecurityAnalyzer() {
-        this.rules = initializeRules();
+        this(null);
+    }
+    
+    /**
+     * Con un ResultStore, los escaneos con más de una página de hallazgos devuelven un
+     * resumen y los URIs de sus páginas en lugar del listado completo
+     */
+    SecurityAnalyzer(ResultStore results) {
+        this.ruleEngine = new RuleEngine<>("SecurityAnalyzer", initializeRules());
+        this.results = results;
     }
     
     private Map<String, List<SecurityRule>> initializeRules() {
         Map<String, List<SecurityRule>> ruleMap = new HashMap<>();
         
         List<SecurityRule> javaRules = new ArrayList<>();
-        javaRules.add(new SecurityRule("SQL_INJECTION", "\".*SELECT.*\\+.*\"", "CRÍTICO", "Usar PreparedStatement"));
+        javaRules.add(new SecurityRule("SQL_INJECTION", "\".*SELECT.*\\+.*\"", "CRÍTICO", "Usar PreparedStatement", SourceTokens.STRING));
         javaRules.add(new SecurityRule("HARDCODED_PASSWORD", "password\\s*=\\s*\"[^\"]+\"", "ALTO", "Usar variables de entorno"));
         javaRules.add(new SecurityRule("HARDCODED_SECRET", "(secret|token|key)\\s*=\\s*\"[^\"]+\"", "ALTO", "Usar configuración externa"));
-        javaRules.add(new SecurityRule("HTTP_URL", "\"http://[^\"]*\"", "MEDIO", "Usar HTTPS"));
+        javaRules.add(new SecurityRule("HTTP_URL", "\"http://[^\"]*\"", "MEDIO", "Usar HTTPS", SourceTokens.STRING));
         javaRules.add(new SecurityRule("COMMAND_INJECTION", "Runtime\\.getRuntime\\(\\)\\.exec", "CRÍTICO", "Evitar ejecución de comandos"));
-        javaRules.add(new SecurityRule("FILE_PATH_TRAVERSAL", "\\.\\./", "ALTO", "Validar paths de entrada"));
+        javaRules.add(new SecurityRule("FILE_PATH_TRAVERSAL", "\\.\\./", "ALTO", "Validar paths de entrada", SourceTokens.STRING));
         ruleMap.put("java", javaRules);
         
         List<SecurityRule> jsRules = new ArrayList<>();
@@ -35,10 +48,41 @@ public class SecurityAnalyzer {
     }
     
     public String scanRepository(String repoPath) {
+        return scanRepository(repoPath, null, false);
+    }
+    
+    /**
+     * Escanea el repositorio; con baseRef o stagedOnly solo analiza los archivos modificados según git
+     */
+    public String scanRepository(String repoPath, String baseRef, boolean stagedOnly) {
+        return scanRepository(repoPath, baseRef, stagedOnly, ScanScheduler.fromConfig(), ScanProgress.NONE,
+                              CancellationToken.NONE);
+    }
+    
+    /**
+     * Escanea dentro del presupuesto del scheduler; si no alcanza, el reporte incluye el cursor para continuar.
+     * Si se cancela la llamada el escaneo se detiene y devuelve el error
+     */
+    String scanRepository(String repoPath, String baseRef, boolean stagedOnly,
+                          ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
+        return scan(repoPath, baseRef, stagedOnly, scheduler, progress, cancellation).render();
+    }
+    
+    /**
+     * Igual que scanRepository, pero devuelve el reporte sin formatear: el escaneo ya terminó y
+     * el texto se genera al escribirlo
+     */
+    Report scan(String repoPath, String baseRef, boolean stagedOnly,
+                ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
         try {
+            boolean changesOnly = baseRef != null || stagedOnly;
+            
             // Si el path está vacío o es "auto", buscar automáticamente
             if (repoPath == null || repoPath.trim().isEmpty() || repoPath.equals("auto")) {
-                return scanRepositoryAuto();
+                if (changesOnly || scheduler.hasCursor()) {
+                    return Report.text("❌ base_ref, staged_only y cursor requieren un repo_path concreto, no 'auto'");
+                }
+                return Report.text(scanRepositoryAuto(scheduler, progress, cancellation));
             }
             
             // Resolver el path completo
@@ -46,30 +90,40 @@ public class SecurityAnalyzer {
             
             // Validar que el path existe y es accesible
             if (!Files.exists(path)) {
-                return "❌ Repositorio no encontrado: " + repoPath + " (ruta completa: " + path + ")\n" +
-                       "💡 Intenta usar 'auto' para búsqueda automática o verifica la ruta.";
+                return Report.text("❌ Repositorio no encontrado: " + repoPath + " (ruta completa: " + path + ")\n" +
+                       "💡 Intenta usar 'auto' para búsqueda automática o verifica la ruta.");
             }
             
             if (!Files.isReadable(path)) {
-                return "❌ No se puede leer el repositorio: " + repoPath;
+                return Report.text("❌ No se puede leer el repositorio: " + repoPath);
             }
             
-            List<SecurityIssue> issues = new ArrayList<>();
-            scanDirectory(path, issues);
+            FindingStore issues = new FindingStore();
+            if (changesOnly) {
+                GitChangeSet changes = GitChangeSet.resolve(path, baseRef, stagedOnly);
+                scanChanges(path, changes, issues, scheduler, progress, cancellation);
+                progress.finish();
+                ResultStore.Entry stored = storeIfLarge(issues, repoPath);
+                return Report.of(Report.text(changes.describe()), out -> writeResults(issues, repoPath, stored, out),
+                                 Report.text(scheduler.describe()));
+            }
+            scanDirectory(path, issues, scheduler, progress, cancellation);
+            progress.finish();
             
-            return formatResults(issues, repoPath);
+            ResultStore.Entry stored = storeIfLarge(issues, repoPath);
+            return Report.of(out -> writeResults(issues, repoPath, stored, out), Report.text(scheduler.describe()));
             
         } catch (SecurityException e) {
-            return "❌ Error de seguridad: " + e.getMessage();
+            return Report.text("❌ Error de seguridad: " + e.getMessage());
         } catch (Exception e) {
-            return "❌ Error: " + e.getMessage();
+            return Report.text("❌ Error: " + e.getMessage());
         }
     }
     
     /**
      * Busca automáticamente repositorios en ubicaciones comunes
      */
-    private String scanRepositoryAuto() {
+    private String scanRepositoryAuto(ScanScheduler scheduler, ScanProgress progress, CancellationToken cancellation) {
         List<String> searchPaths = new ArrayList<>();
         String homeDir = System.getProperty("user.home");
         
@@ -96,16 +150,18 @@ public class SecurityAnalyzer {
                     reposFound++;
                     result.append("📁 Analizando: ").append(repo.getFileName()).append("\n");
                     
-                    List<SecurityIssue> issues = new ArrayList<>();
-                    scanDirectory(repo, issues);
+                    FindingStore issues = new FindingStore();
+                    scanDirectory(repo, issues, scheduler, progress, cancellation);
                     totalIssues += issues.size();
                     
                     if (issues.isEmpty()) {
                         result.append("   ✅ Sin problemas encontrados\n");
                     } else {
                         result.append("   ⚠️ ").append(issues.size()).append(" problemas encontrados\n");
-                        for (SecurityIssue issue : issues) {
-                            result.append("      ").append(formatIssue(issue));
+                        try (FindingStore.Snippets snippets = issues.snippets()) {
+                            for (int i = 0; i < issues.size(); i++) {
+                                result.append("      ").append(formatIssue(issues, i, snippets));
+                            }
                         }
                     }
                     result.append("\n");
@@ -115,7 +171,13 @@ public class SecurityAnalyzer {
                         result.append("⚠️ Límite de repositorios alcanzado (5). Deteniendo búsqueda.\n");
                         break;
                     }
+                    if (scheduler.isTruncated()) {
+                        result.append("⚠️ Presupuesto de escaneo agotado. Deteniendo búsqueda.\n");
+                        break;
+                    }
                 }
+            } catch (java.util.concurrent.CancellationException e) {
+                throw e;
             } catch (Exception e) {
                 result.append("❌ Error analizando ").append(searchPath).append(": ").append(e.getMessage()).append("\n");
             }
@@ -124,6 +186,7 @@ public class SecurityAnalyzer {
         result.append("\n📊 RESUMEN:\n");
         result.append("   • Repositorios encontrados: ").append(reposFound).append("\n");
         result.append("   • Problemas totales: ").append(totalIssues).append("\n");
+        progress.finish();
         
         return result.toString();
     }
@@ -172,18 +235,74 @@ public class SecurityAnalyzer {
         }
     }
     
-    private void scanDirectory(Path dir, List<SecurityIssue> issues) throws IOException {
-        // Limitar la profundidad de búsqueda para evitar timeouts
-        int maxDepth = 3;
-        
-        try (var stream = Files.walk(dir, maxDepth)) {
-            stream.filter(this::isSupportedFile)
-                  .filter(this::isReadableFile)
-                  .limit(50) // Limitar el número de archivos para evitar timeouts
-                  .forEach(file -> scanFile(file, issues));
+    private void scanDirectory(Path dir, FindingStore issues, ScanScheduler scheduler,
+                               ScanProgress progress, CancellationToken cancellation) throws IOException {
+        runPipeline(dir, null, issues, scheduler, progress, cancellation, sink ->
+            scheduler.walk(dir, Config.getMaxDepth(), file -> isSupportedFile(file) && isReadableFile(file), sink));
+    }
+    
+    /**
+     * Escanea solo los archivos modificados; en modo staged se lee el contenido del index
+     */
+    private void scanChanges(Path dir, GitChangeSet changes, FindingStore issues, ScanScheduler scheduler,
+                             ScanProgress progress, CancellationToken cancellation) throws IOException {
+        runPipeline(dir, changes, issues, scheduler, progress, cancellation, sink ->
+            scheduler.offer(dir, changes.getFiles(),
+                file -> isSupportedFile(file) && (changes.isStagedOnly() || isReadableFile(file)), sink));
+    }
+    
+    private void runPipeline(Path dir, GitChangeSet changes, FindingStore issues, ScanScheduler scheduler,
+                             ScanProgress progress, CancellationToken cancellation,
+                             ScanPipeline.Discovery discovery) throws IOException {
+        java.nio.charset.Charset charset = java.nio.charset.Charset.forName(Config.getFileEncoding());
+        ScanCache cache = ScanCache.forRepository(dir, "security", cacheVersion());
+        boolean fromIndex = changes != null && changes.isStagedOnly();
+        ScanPipeline<ScanCache.Input> pipeline = new ScanPipeline<>(
+            file -> fromIndex ? ScanCache.uncached(changes.open(file, charset)) : cache.prepare(file, charset),
+            (file, input, found) -> {
+                // Si el presupuesto se agotó mientras el archivo esperaba en cola, queda para la próxima llamada
+                if (cancellation.isCancelled() || !scheduler.canScan(file)) {
+                    input.release();
+                    return;
+                }
+                cache.complete(file, input, (f, lines, out) -> scanContent(f, lines, out, cancellation), found);
+                scheduler.addFindings(found.size());
+                progress.fileScanned(input.bytesRead(), found.size());
+            },
+            ScanCache.Input::residentBytes, ScanCache.Input::release);
+        try {
+            FindingStore found = pipeline.run(cancellation, sink -> {
+                discovery.discover(file -> {
+                    cancellation.throwIfCancelled();
+                    progress.filesDiscovered(1);
+                    sink.accept(file);
+                });
+                progress.discoveryFinished();
+            });
+            scheduler.retainCompleted(found);
+            issues.addAll(found);
+        } finally {
+            cache.save();
+            lastPipelineStats = pipeline.snapshot();
+            Log.debug(() -> "📊 Pipeline de escaneo: " + lastPipelineStats);
         }
     }
     
+    /**
+     * Versión de la caché: reglas, límites que afectan a los hallazgos y lógica de escaneo
+     */
+    private String cacheVersion() {
+        return ruleEngine.getVersion() + "|" + Config.getMaxLineLength() + "|" + Config.getFileEncoding()
+            + "|" + Config.getRuleTimeoutMillis() + "|" + SCAN_LOGIC_VERSION;
+    }
+    
+    /**
+     * Profundidad de colas por etapa del último escaneo de directorio
+     */
+    ScanPipeline.Stats getLastPipelineStats() {
+        return lastPipelineStats;
+    }
+    
     private boolean isSupportedFile(Path file) {
         String name = file.toString().toLowerCase();
         return name.endsWith(".java") || name.endsWith(".js") || name.endsWith(".ts");
@@ -197,57 +316,45 @@ public class SecurityAnalyzer {
         }
     }
     
-    private void scanFile(Path file, List<SecurityIssue> issues) {
-        try {
-            // Verificar tamaño del archivo
-            long fileSize = Files.size(file);
-            if (fileSize > Config.getMaxFileSize()) {
-                issues.add(new SecurityIssue(
-                    "FILE_TOO_LARGE", "MEDIO", "Archivo demasiado grande para analizar",
-                    file.toString(), 0, "Tamaño: " + fileSize + " bytes"
-                ));
-                return;
-            }
+    void scanContent(Path file, MappedLines lines, FindingStore issues, CancellationToken cancellation) {
+        // Verificar tamaño del archivo
+        long fileSize = lines.size();
+        if (fileSize > Config.getMaxFileSize()) {
+            issues.add(file, "FILE_TOO_LARGE", "MEDIO", "Archivo demasiado grande para analizar",
+                0, "Tamaño: " + fileSize + " bytes");
+            return;
+        }
+        
+        String extension = getFileExtension(file);
+        RuleEngine.CompiledRuleSet<SecurityRule> fileRules = ruleEngine.forExtension(extension);
+        if (fileRules == null) return;
+        
+        // Código, comentarios y strings de cada línea, para las reglas que se limitan a uno
+        SourceTokens.LineScopes scopes = SourceTokens.lineScopes(file, lines);
+        List<SecurityRule> timedOut = new ArrayList<>(1);
+        int maxLineLength = Config.getMaxLineLength();
+        while (lines.next()) {
+            cancellation.checkLine(lines.lineNumber());
             
-            String content = new String(Files.readAllBytes(file), java.nio.charset.Charset.forName(Config.getFileEncoding()));
-            String extension = getFileExtension(file);
-            List<SecurityRule> fileRules = rules.get(extension);
-            if (fileRules == null) return;
+            // Validar longitud de línea (en bytes primero; solo se decodifica si puede excederla)
+            if (lines.byteLength() > maxLineLength && lines.text().length() > maxLineLength) {
+                issues.add(file, "LINE_TOO_LONG", "BAJO", "Línea demasiado larga",
+                    lines.lineNumber(), "Longitud: " + lines.text().length() + " caracteres");
+                continue;
+            }
             
-            String[] lines = content.split("\n");
-            int maxLines = Math.min(lines.length, 1000); // Limitar el número de líneas para evitar timeouts
+            long[] candidates = lines.candidates(fileRules);
+            if (candidates == null) continue;
             
-            for (int i = 0; i < maxLines; i++) {
-                String line = lines[i];
-                
-                // Validar longitud de línea
-                if (line.length() > Config.getMaxLineLength()) {
-                    issues.add(new SecurityIssue(
-                        "LINE_TOO_LONG", "BAJO", "Línea demasiado larga",
-                        file.toString(), i + 1, "Longitud: " + line.length() + " caracteres"
-                    ));
-                    continue;
-                }
-                
-                for (SecurityRule rule : fileRules) {
-                    try {
-                        if (Pattern.compile(rule.pattern).matcher(line).find()) {
-                            issues.add(new SecurityIssue(
-                                rule.name, rule.severity, rule.solution,
-                                file.toString(), i + 1, line.trim()
-                            ));
-                            // Limitar el número de issues por archivo para evitar timeouts
-                            if (issues.size() >= 20) {
-                                return;
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignorar patrones regex inválidos
-                    }
-                }
+            String line = lines.text();
+            for (SecurityRule rule : fileRules.match(line, candidates, scopes != null ? scopes.at(line) : null, timedOut)) {
+                issues.add(file, rule, lines);
             }
-        } catch (IOException e) {
-            // Ignorar archivos no legibles
+            for (SecurityRule rule : timedOut) {
+                issues.add(file, RuleEngine.TIMEOUT_FINDING, "BAJO", "Regla abortada por exceder el tiempo máximo por línea",
+                    lines.lineNumber(), "Regla: " + rule.name);
+            }
+            timedOut.clear();
         }
     }
     
@@ -257,30 +364,48 @@ public class SecurityAnalyzer {
         return lastDot > 0 ? name.substring(lastDot + 1) : "";
     }
     
-    private String formatResults(List<SecurityIssue> issues, String repoPath) {
+    String formatResults(FindingStore issues, String repoPath) {
+        Report report = out -> writeResults(issues, repoPath, null, out);
+        return report.render();
+    }
+    
+    private ResultStore.Entry storeIfLarge(FindingStore issues, String repoPath) {
+        return results != null ? results.storeIfLarge("Análisis de seguridad: " + repoPath, issues, this::formatIssue) : null;
+    }
+    
+    /**
+     * Con stored, en lugar de listar los hallazgos se escribe el resumen con los URIs de sus páginas
+     */
+    private void writeResults(FindingStore issues, String repoPath, ResultStore.Entry stored, Writer out) throws IOException {
         if (issues.isEmpty()) {
-            return "✅ No se encontraron vulnerabilidades en: " + repoPath;
+            out.write("✅ No se encontraron vulnerabilidades en: " + repoPath);
+            return;
         }
         
-        StringBuilder result = new StringBuilder();
-        result.append("🔍 ANÁLISIS DE SEGURIDAD\n");
-        result.append("📁 ").append(repoPath).append("\n");
-        result.append("📊 Issues encontrados: ").append(issues.size()).append("\n\n");
+        out.write("🔍 ANÁLISIS DE SEGURIDAD\n");
+        out.write("📁 " + repoPath + "\n");
+        out.write("📊 Issues encontrados: " + issues.size() + "\n\n");
         
-        for (SecurityIssue issue : issues) {
-            result.append(formatIssue(issue)).append("\n");
+        if (stored != null) {
+            stored.writeSummary(out);
+            return;
+        }
+        try (FindingStore.Snippets snippets = issues.snippets()) {
+            for (int i = 0; i < issues.size(); i++) {
+                out.write(formatIssue(issues, i, snippets));
+                out.write("\n");
+            }
         }
-        
-        return result.toString();
     }
     
-    private String formatIssue(SecurityIssue issue) {
-        String fileName = issue.file.substring(issue.file.lastIndexOf(Config.getFileSeparator()) + 1);
+    private String formatIssue(FindingStore issues, int row, FindingStore.Snippets snippets) {
+        String file = issues.getFile(row);
+        String fileName = file.substring(file.lastIndexOf(Config.getFileSeparator()) + 1);
         return String.format("%s %s\n📁 %s:%d\n💻 %s\n🔧 %s\n",
-            getSeverityIcon(issue.severity), issue.name,
-            fileName, issue.line,
-            issue.code,
-            issue.solution);
+            getSeverityIcon(issues.getLevel(row)), issues.getName(row),
+            fileName, issues.getLine(row),
+            snippets.code(row),
+            issues.getAdvice(row));
     }
     
     private String getSeverityIcon(String severity) {
@@ -292,10 +417,24 @@ public class SecurityAnalyzer {
         }
     }
     
+    /**
+     * Costo y coincidencias de cada regla; con reset, los contadores vuelven a cero
+     */
+    List<RuleEngine.RuleStats> getRuleStats(boolean reset) {
+        return ruleEngine.getStats(reset);
+    }
+    
+    /**
+     * Reglas compiladas para una extensión, o null si no tiene
+     */
+    RuleEngine.CompiledRuleSet<SecurityRule> rulesFor(String extension) {
+        return ruleEngine.forExtension(extension);
+    }
+    
     /**
      * Resuelve un path relativo o absoluto
      */
-    private Path resolvePath(String repoPath) {
+    Path resolvePath(String repoPath) {
         Path path = Paths.get(repoPath).normalize();
         
         if (path.isAbsolute()) {
@@ -321,29 +460,35 @@ public class SecurityAnalyzer {
         return Paths.get(homeDir).resolve(path).normalize();
     }
     
-    static class SecurityRule {
+    static class SecurityRule implements RuleEngine.Rule {
         final String name, pattern, severity, solution;
+        final int scopes;
         
         SecurityRule(String name, String pattern, String severity, String solution) {
-            this.name = name;
-            this.pattern = pattern;
-            this.severity = severity;
-            this.solution = solution;
+            this(name, pattern, severity, solution, SourceTokens.CODE);
         }
-    }
-    
-    static class SecurityIssue {
-        final String name, severity, solution, file, code;
-        final int line;
         
-        SecurityIssue(String name, String severity, String solution, 
-                     String file, int line, String code) {
+        SecurityRule(String name, String pattern, String severity, String solution, int scopes) {
             this.name = name;
+            this.pattern = pattern;
             this.severity = severity;
             this.solution = solution;
-            this.file = file;
-            this.line = line;
-            this.code = code;
+            this.scopes = scopes;
         }
+        
+        @Override
+        public String getName() { return name; }
+        
+        @Override
+        public String getPattern() { return pattern; }
+        
+        @Override
+        public String getLevel() { return severity; }
+        
+        @Override
+        public String getAdvice() { return solution; }
+        
+        @Override
+        public int getScopes() { return scopes; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package org.example.mcp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Agrupa las llamadas idénticas que llegan mientras otra igual está en curso: la
+ * primera lanza el cálculo en el executor compartido y todas, ella incluida, esperan
+ * y reciben el mismo resultado, en lugar de repetir el recorrido y el escaneo.
+ *
+ * Cada llamada conserva su propia cancelación: una llamada cancelada deja de esperar
+ * y libera su hilo enseguida sin afectar a las demás, y el cálculo compartido solo se
+ * cancela cuando ya no queda nadie esperándolo. El progreso se reenvía a todas las
+ * llamadas que lo pidieron.
+ */
+final class SingleFlight<V> {
+    interface Computation<V> {
+        V compute(CancellationToken cancellation, ScanProgress progress);
+    }
+
+    private final Map<String, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    /**
+     * executor ejecuta los cálculos; no debe ser el de las llamadas que esperan, o con
+     * todos sus hilos esperando ningún cálculo podría empezar
+     */
+    SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Ejecuta el cálculo o se une al que ya está en curso con la misma clave. listener
+     * puede ser null si la llamada no pidió progreso
+     */
+    V execute(String key, CancellationToken caller, ScanProgress.Listener listener, Computation<V> computation) {
+        Flight<V> flight;
+        boolean leader = false;
+        while (true) {
+            Flight<V> current = flights.get(key);
+            if (current != null && current.join(listener)) {
+                flight = current;
+                break;
+            }
+            // Sin cálculo en curso, o uno ya abandonado por todos: empezar otro
+            Flight<V> created = new Flight<>();
+            created.join(listener);
+            boolean installed = current == null
+                ? flights.putIfAbsent(key, created) == null
+                : flights.replace(key, current, created);
+            if (installed) {
+                flight = created;
+                leader = true;
+                break;
+            }
+        }
+        if (!leader) {
+            Log.debug(() -> "🔗 Llamada unida a un escaneo en curso: " + key);
+        }
+
+        Flight<V> joined = flight;
+        CancellationToken.Registration registration = caller.onCancel(() -> joined.leave(listener));
+        try {
+            if (leader) {
+                start(key, joined, computation);
+            }
+            return joined.await(caller);
+        } finally {
+            registration.close();
+        }
+    }
+
+    private void start(String key, Flight<V> flight, Computation<V> computation) {
+        try {
+            executor.execute(() -> {
+                try {
+                    flight.run(computation);
+                } finally {
+                    flights.remove(key, flight);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Servidor cerrándose
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final CancellationToken cancellation = new CancellationToken();
+        private final List<ScanProgress.Listener> listeners = new CopyOnWriteArrayList<>();
+        private int waiters;
+        private boolean abandoned;
+
+        synchronized boolean join(ScanProgress.Listener listener) {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            if (listener != null) {
+                listeners.add(listener);
+            }
+            return true;
+        }
+
+        /**
+         * Una llamada cancelada deja de esperar; si era la última, se cancela el cálculo
+         */
+        void leave(ScanProgress.Listener listener) {
+            synchronized (this) {
+                waiters--;
+                if (listener != null) {
+                    listeners.remove(listener);
+                }
+                if (waiters > 0 || result.isDone()) {
+                    return;
+                }
+                abandoned = true;
+            }
+            cancellation.cancel();
+        }
+
+        void run(Computation<V> computation) {
+            ScanProgress progress = ScanProgress.reportingTo(state -> {
+                for (ScanProgress.Listener listener : listeners) {
+                    listener.onProgress(state);
+                }
+            });
+            try {
+                result.complete(computation.compute(cancellation, progress));
+            } catch (RuntimeException e) {
+                // Lo reciben las llamadas que esperan
+                result.completeExceptionally(e);
+            } catch (Error e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Espera el resultado, o hasta que se cancele la llamada que espera
+         */
+        V await(CancellationToken caller) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    mine.completeExceptionally(error);
+                } else {
+                    mine.complete(value);
+                }
+            });
+            CancellationToken.Registration registration =
+                caller.onCancel(() -> mine.completeExceptionally(new CancellationException("Llamada cancelada")));
+            try {
+                return mine.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            } finally {
+                registration.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package org.example.mcp;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tokens de un archivo .java, .js o .ts reducidos a lo que necesitan las reglas: el
+ * ámbito de cada posición, código, comentario o string. Se calculan en una sola pasada
+ * sobre el contenido y se guardan compactos, como runs por línea (columna de inicio y
+ * ámbito), en las unidades de MappedLines.raw().
+ *
+ * Un string abarca desde su comilla de apertura hasta el final de su contenido; la de
+ * cierre ya cuenta como código, así una coincidencia que empieza al cerrar un string no
+ * pasa por string. En JS/TS los template literals son string salvo sus ${...}, y las
+ * expresiones regulares literales también cuentan como string.
+ *
+ * Mientras haya una petición en curso (openScope) los tokens se guardan por hash de
+ * contenido: los analizadores que corren a la vez sobre los mismos archivos los
+ * comparten en lugar de volver a tokenizar. Las instancias son inmutables.
+ */
+final class SourceTokens {
+    static final int CODE = 1;
+    static final int COMMENT = 2;
+    static final int STRING = 4;
+    static final int ANY = CODE | COMMENT | STRING;
+
+    private static final int JAVA = 0;
+    private static final int JAVASCRIPT = 1;
+
+    private static final Object LOCK = new Object();
+    private static final LinkedHashMap<String, Cached> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static final AtomicLong LEXED = new AtomicLong();
+    private static final AtomicLong REUSED = new AtomicLong();
+    private static long cachedBytes;
+    private static int openScopes;
+
+    private final int[] lineRuns;     // primer run de cada línea (base 1); lineRuns[n + 1] es el centinela
+    private final int[] runColumns;
+    private final byte[] runScopes;
+    private final int lines;
+
+    private SourceTokens(int[] lineRuns, int[] runColumns, byte[] runScopes, int lines) {
+        this.lineRuns = lineRuns;
+        this.runColumns = runColumns;
+        this.runScopes = runScopes;
+        this.lines = lines;
+    }
+
+    /**
+     * Tokens del archivo, de la caché de la petición si ya se calcularon para el mismo
+     * contenido, o null si la extensión no tiene tokenizador. Si otro analizador está
+     * tokenizando el mismo contenido, espera su resultado en lugar de repetirlo
+     */
+    static SourceTokens of(Path file, MappedLines content) {
+        int dialect = dialectOf(file);
+        if (dialect < 0) {
+            return null;
+        }
+        long maxBytes = Config.getTokenCacheMaxBytes();
+        synchronized (LOCK) {
+            if (openScopes == 0 || maxBytes == 0) {
+                LEXED.incrementAndGet();
+                return new Lexer(content.rawContent(), dialect).run();
+            }
+        }
+
+        String key = dialect + ":" + content.charset().name() + ":" + content.contentHash();
+        Cached shared;
+        synchronized (LOCK) {
+            shared = CACHE.get(key);
+            if (shared == null) {
+                shared = new Cached();
+                CACHE.put(key, shared);
+            } else {
+                REUSED.incrementAndGet();
+                return shared.tokens.join();
+            }
+        }
+
+        SourceTokens tokens;
+        try {
+            tokens = new Lexer(content.rawContent(), dialect).run();
+        } catch (RuntimeException | Error e) {
+            synchronized (LOCK) {
+                CACHE.remove(key, shared);
+            }
+            shared.tokens.completeExceptionally(e);
+            throw e;
+        }
+        LEXED.incrementAndGet();
+        shared.tokens.complete(tokens);
+        synchronized (LOCK) {
+            // Si ya no está (la petición terminó o se desalojó) no cuenta para el límite
+            if (CACHE.get(key) == shared) {
+                shared.bytes = tokens.bytes();
+                cachedBytes += shared.bytes;
+                Iterator<Cached> eldest = CACHE.values().iterator();
+                while (cachedBytes > maxBytes && eldest.hasNext()) {
+                    cachedBytes -= eldest.next().bytes;
+                    eldest.remove();
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static int dialectOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".java")) {
+            return JAVA;
+        }
+        if (name.endsWith(".js") || name.endsWith(".ts") || name.endsWith(".jsx") || name.endsWith(".tsx")) {
+            return JAVASCRIPT;
+        }
+        return -1;
+    }
+
+    /**
+     * Abre el ámbito de una petición; al cerrarse el último ámbito abierto se libera la caché
+     */
+    static Scope openScope() {
+        synchronized (LOCK) {
+            openScopes++;
+        }
+        return new Scope();
+    }
+
+    /**
+     * Entrada de la caché; bytes queda en 0 mientras se está tokenizando
+     */
+    private static final class Cached {
+        final CompletableFuture<SourceTokens> tokens = new CompletableFuture<>();
+        long bytes;
+    }
+
+    static final class Scope implements AutoCloseable {
+        private boolean closed;
+
+        private Scope() {
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (LOCK) {
+                if (--openScopes > 0) {
+                    return;
+                }
+                CACHE.clear();
+                cachedBytes = 0;
+            }
+            long lexed = LEXED.getAndSet(0);
+            long reused = REUSED.getAndSet(0);
+            Log.debug(() -> "🔤 Tokens: " + lexed + " archivos tokenizados, " + reused + " reutilizados");
+        }
+    }
+
+    /**
+     * Memoria estimada, para acotar la caché
+     */
+    long bytes() {
+        return 64 + 4L * lineRuns.length + 5L * runColumns.length;
+    }
+
+    /**
+     * Primer run de la línea (base 1); los runs de la línea van hasta endRun(line)
+     */
+    int firstRun(int line) {
+        return line >= 1 && line <= lines ? lineRuns[line] : 0;
+    }
+
+    int endRun(int line) {
+        return line >= 1 && line <= lines ? lineRuns[line + 1] : 0;
+    }
+
+    int runColumn(int run) {
+        return runColumns[run];
+    }
+
+    int runScope(int run) {
+        return runScopes[run];
+    }
+
+    /**
+     * Ámbito de la columna (unidades de raw()) en la línea; CODE fuera del contenido
+     */
+    int scopeAt(int line, int column) {
+        int first = firstRun(line);
+        int end = endRun(line);
+        if (first == end) {
+            return CODE;
+        }
+        int run = first;
+        while (run + 1 < end && runColumns[run + 1] <= column) {
+            run++;
+        }
+        return runScopes[run];
+    }
+
+    /**
+     * Unión de los ámbitos presentes en la línea
+     */
+    int scopesIn(int line) {
+        int first = firstRun(line);
+        int end = endRun(line);
+        if (first == end) {
+            return CODE;
+        }
+        int scopes = 0;
+        for (int run = first; run < end; run++) {
+            scopes |= runScopes[run];
+        }
+        return scopes;
+    }
+
+    /**
+     * Ámbitos línea a línea del archivo para RuleEngine, o null si la extensión no tiene
+     * tokenizador. Los tokens se obtienen en el primer uso: un archivo en el que ninguna
+     * línea pasa el prefiltro no se tokeniza
+     */
+    static LineScopes lineScopes(Path file, MappedLines content) {
+        return dialectOf(file) >= 0 ? new LineScopes(file, content) : null;
+    }
+
+    /**
+     * Vista de la línea actual del cursor que traduce posiciones del texto decodificado a
+     * columnas de raw(). Se reutiliza de línea en línea; no es thread-safe
+     */
+    static final class LineScopes implements RuleEngine.ScopeResolver {
+        private final Path file;
+        private final MappedLines content;
+        private SourceTokens tokens;
+        private int line;
+        private CharSequence text;
+        private boolean identity;
+        private int scopes;
+        // Última posición traducida: las consultas de una línea suelen ir hacia adelante
+        private int mappedIndex;
+        private int mappedRaw;
+
+        private LineScopes(Path file, MappedLines content) {
+            this.file = file;
+            this.content = content;
+        }
+
+        SourceTokens tokens() {
+            if (tokens == null) {
+                tokens = of(file, content);
+            }
+            return tokens;
+        }
+
+        /**
+         * Apunta a la línea actual del cursor, cuyo texto decodificado es text
+         */
+        LineScopes at(CharSequence text) {
+            this.line = content.lineNumber();
+            this.text = text;
+            this.identity = text.length() == content.byteLength();
+            this.scopes = tokens().scopesIn(line);
+            this.mappedIndex = 0;
+            this.mappedRaw = 0;
+            return this;
+        }
+
+        @Override
+        public int lineScopes() {
+            return scopes;
+        }
+
+        @Override
+        public int scopeAt(int index) {
+            if (scopes == CODE || scopes == COMMENT || scopes == STRING) {
+                return scopes; // Toda la línea en un solo ámbito
+            }
+            if (identity) {
+                return tokens.scopeAt(line, index);
+            }
+            if (index < mappedIndex) {
+                mappedIndex = 0;
+                mappedRaw = 0;
+            }
+            mappedRaw += content.rawLength(text, mappedIndex, index);
+            mappedIndex = index;
+            return tokens.scopeAt(line, mappedRaw);
+        }
+    }
+
+    /**
+     * Una pasada sobre el contenido; cada char se mira una vez salvo al comprobar si una
+     * barra abre una regex en JS, que mira hacia adelante solo dentro de la misma línea
+     */
+    private static final class Lexer {
+        private static final int IN_CODE = 0;
+        private static final int IN_LINE_COMMENT = 1;
+        private static final int IN_BLOCK_COMMENT = 2;
+        private static final int IN_STRING = 3;
+        private static final int IN_TEXT_BLOCK = 4;
+        private static final int IN_TEMPLATE = 5;
+
+        private final CharSequence text;
+        private final int dialect;
+
+        private int[] lineRuns = new int[256];
+        private int[] runColumns = new int[512];
+        private byte[] runScopes = new byte[512];
+        private int runs;
+        private int line = 1;
+        private int lineStart;
+        private int currentScope = -1;
+
+        private int state = IN_CODE;
+        private char quote;
+        // Profundidad de llaves dentro de cada ${...} abierto de un template literal
+        private int[] templates = new int[8];
+        private int openTemplates;
+        // En JS: si una barra en esta posición empezaría una regex y no una división
+        private boolean regexAllowed = true;
+
+        Lexer(CharSequence text, int dialect) {
+            this.text = text;
+            this.dialect = dialect;
+        }
+
+        SourceTokens run() {
+            lineRuns[1] = 0;
+            scope(0, CODE);
+            int length = text.length();
+            int i = 0;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    newLine(i + 1);
+                    i++;
+                    continue;
+                }
+                switch (state) {
+                    case IN_LINE_COMMENT:
+                        i++;
+                        break;
+                    case IN_BLOCK_COMMENT:
+                        if (c == '*' && i + 1 < length && text.charAt(i + 1) == '/') {
+                            state = IN_CODE;
+                            i += 2;
+                            scope(i, CODE);
+                        } else {
+                            i++;
+                        }
+                        break;
+                    case IN_STRING:
+                        i = string(i, c);
+                        break;
+                    case IN_TEXT_BLOCK:
+                        if (c == '\\') {
+                            i += 2;
+                        } else if (c == '"' && i + 2 < length && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                            state = IN_CODE;
+                            scope(i, CODE);
+                            i += 3;
+                        } else {
+                            i++;
+                        }
+                        break;
+                    case IN_TEMPLATE:
+                        if (c == '\\') {
+                            i += 2;
+                        } else if (c == '`') {
+                            state = IN_CODE;
+                            scope(i, CODE);
+                            regexAllowed = false;
+                            i++;
+                        } else if (c == '$' && i + 1 < length && text.charAt(i + 1) == '{') {
+                            if (openTemplates == templates.length) {
+                                templates = Arrays.copyOf(templates, openTemplates * 2);
+                            }
+                            templates[openTemplates++] = 0;
+                            state = IN_CODE;
+                            i += 2;
+                            scope(i, CODE);
+                            regexAllowed = true;
+                        } else {
+                            i++;
+                        }
+                        break;
+                    default:
+                        i = code(i, c);
+                }
+            }
+            lineRuns[line + 1] = runs;
+            return new SourceTokens(Arrays.copyOf(lineRuns, line + 2), Arrays.copyOf(runColumns, runs),
+                                    Arrays.copyOf(runScopes, runs), line);
+        }
+
+        private int code(int i, char c) {
+            int length = text.length();
+            char next = i + 1 < length ? text.charAt(i + 1) : 0;
+            if (c == '/' && next == '/') {
+                state = IN_LINE_COMMENT;
+                scope(i, COMMENT);
+                return i + 2;
+            }
+            if (c == '/' && next == '*') {
+                state = IN_BLOCK_COMMENT;
+                scope(i, COMMENT);
+                return i + 2;
+            }
+            if (c == '"' || c == '\'') {
+                if (dialect == JAVA && c == '"' && next == '"' && i + 2 < length && text.charAt(i + 2) == '"') {
+                    state = IN_TEXT_BLOCK;
+                    scope(i, STRING);
+                    return i + 3;
+                }
+                state = IN_STRING;
+                quote = c;
+                scope(i, STRING);
+                return i + 1;
+            }
+            if (dialect == JAVASCRIPT) {
+                return scriptCode(i, c);
+            }
+            return i + 1;
+        }
+
+        private int scriptCode(int i, char c) {
+            if (c == '`') {
+                state = IN_TEMPLATE;
+                scope(i, STRING);
+                return i + 1;
+            }
+            if (c == '/' && regexAllowed) {
+                int end = regexEnd(i + 1);
+                if (end > 0) {
+                    scope(i, STRING);
+                    scope(end, CODE);
+                    regexAllowed = false;
+                    return end;
+                }
+            }
+            if (openTemplates > 0 && c == '{') {
+                templates[openTemplates - 1]++;
+            } else if (openTemplates > 0 && c == '}') {
+                if (templates[openTemplates - 1]-- == 0) {
+                    // Cierra el ${...}: vuelve al texto del template
+                    openTemplates--;
+                    state = IN_TEMPLATE;
+                    scope(i + 1, STRING);
+                    return i + 1;
+                }
+            }
+
+            if (isWordPart(c)) {
+                int end = i + 1;
+                while (end < text.length() && isWordPart(text.charAt(end))) {
+                    end++;
+                }
+                // Tras return, typeof, etc. una barra abre una regex; tras un nombre o número, divide
+                regexAllowed = isOperatorKeyword(i, end);
+                return end;
+            }
+            if (c != ' ' && c != '\t' && c != '\r') {
+                regexAllowed = c != ')' && c != ']' && c != '}';
+            }
+            return i + 1;
+        }
+
+        /**
+         * Fin (tras los flags) de la regex que empieza después de la barra, o -1 si no
+         * cierra en la misma línea: entonces era una división
+         */
+        private int regexEnd(int from) {
+            boolean inClass = false;
+            for (int i = from; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    return -1;
+                } else if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    inClass = true;
+                } else if (c == ']') {
+                    inClass = false;
+                } else if (c == '/' && !inClass) {
+                    int end = i + 1;
+                    while (end < text.length() && isWordPart(text.charAt(end))) {
+                        end++;
+                    }
+                    return end;
+                }
+            }
+            return -1;
+        }
+
+        private int string(int i, char c) {
+            if (c == '\\') {
+                // Un escape puede ser \ + salto de línea: el string sigue en la siguiente (JS)
+                if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    newLine(i + 2);
+                }
+                return i + 2;
+            }
+            if (c == quote) {
+                state = IN_CODE;
+                scope(i, CODE);
+                regexAllowed = false;
+            }
+            return i + 1;
+        }
+
+        private void newLine(int offset) {
+            if (state == IN_LINE_COMMENT || state == IN_STRING) {
+                // Un string sin cerrar termina con la línea
+                state = IN_CODE;
+                currentScope = CODE;
+            }
+            line++;
+            if (line + 1 >= lineRuns.length) {
+                lineRuns = Arrays.copyOf(lineRuns, lineRuns.length * 2);
+            }
+            lineStart = offset;
+            lineRuns[line] = runs;
+            int carried = currentScope;
+            currentScope = -1;
+            scope(offset, carried);
+        }
+
+        /**
+         * Empieza un run en la posición absoluta offset, salvo que siga el mismo ámbito
+         */
+        private void scope(int offset, int scope) {
+            if (scope == currentScope) {
+                return;
+            }
+            int column = offset - lineStart;
+            if (runs > lineRuns[line] && runColumns[runs - 1] == column) {
+                runs--; // El run anterior quedó vacío
+            }
+            if (runs == runColumns.length) {
+                runColumns = Arrays.copyOf(runColumns, runs * 2);
+                runScopes = Arrays.copyOf(runScopes, runs * 2);
+            }
+            runColumns[runs] = column;
+            runScopes[runs] = (byte) scope;
+            runs++;
+            currentScope = scope;
+        }
+
+        private static boolean isWordPart(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '$' || c >= 0x80;
+        }
+
+        private boolean isOperatorKeyword(int start, int end) {
+            switch (end - start) {
+                case 2:
+                    return matches(start, "in") || matches(start, "of") || matches(start, "do");
+                case 3:
+                    return matches(start, "new");
+                case 4:
+                    return matches(start, "case") || matches(start, "else") || matches(start, "void");
+                case 5:
+                    return matches(start, "throw") || matches(start, "yield") || matches(start, "await");
+                case 6:
+                    return matches(start, "return") || matches(start, "typeof") || matches(start, "delete");
+                case 10:
+                    return matches(start, "instanceof");
+                default:
+                    return false;
+            }
+        }
+
+        private boolean matches(int start, String keyword) {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (text.charAt(start + i) != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
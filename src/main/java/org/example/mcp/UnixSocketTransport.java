@@ -0,0 +1,310 @@
+package org.example.mcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modo daemon sobre un socket Unix: un proceso de larga duración atiende varias
+ * sesiones a la vez, cada una con el mismo protocolo JSON por líneas que stdio, y
+ * comparte entre ellas los analizadores, la caché de reportes y los resultados.
+ * Un shim (--connect) conecta stdin/stdout del IDE con el socket, así abrir una
+ * sesión cuesta un connect en lugar de arrancar una JVM.
+ *
+ * Los sockets Unix de java.nio existen desde Java 16; se cargan por reflexión para
+ * que el resto del servidor siga funcionando con Java 11.
+ *
+ * Cualquiera que pueda conectarse al socket actúa como el usuario del daemon, y
+ * cualquiera que pueda crearlo antes se hace pasar por él: el socket vive en un
+ * directorio 0700 creado antes del bind, y el shim comprueba su dueño antes de conectar.
+ */
+final class UnixSocketTransport {
+    private final MCPServer server;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    UnixSocketTransport(MCPServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Acepta conexiones en el socket hasta que termina el proceso; cada una es una sesión
+     * independiente, hasta Config.getDaemonMaxConnections() a la vez
+     */
+    void serve(Path socket) throws IOException {
+        secureDirectory(socket.toAbsolutePath().getParent());
+        if (Files.exists(socket)) {
+            // Un socket huérfano de un daemon anterior se reemplaza; uno activo no
+            if (isListening(socket)) {
+                throw new IOException("ya hay un daemon escuchando en " + socket);
+            }
+            Files.delete(socket);
+        }
+
+        int maxConnections = Config.getDaemonMaxConnections();
+        Semaphore slots = new Semaphore(maxConnections);
+        try (ServerSocketChannel listener = open(ServerSocketChannel.class)) {
+            listener.bind(address(socket));
+            try {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Sin permisos POSIX: queda con los del directorio
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    // El siguiente daemon lo reemplaza
+                }
+            }, "mcp-socket-cleanup"));
+            Log.info("🔌 Daemon escuchando en " + socket + " (máx " + maxConnections + " conexiones)");
+
+            while (true) {
+                SocketChannel client = listener.accept();
+                if (!slots.tryAcquire()) {
+                    reject(client, maxConnections);
+                    continue;
+                }
+                int id = connections.incrementAndGet();
+                Thread connection = new Thread(() -> {
+                    Log.info("🔗 Sesión sock-" + id + " conectada");
+                    try (SocketChannel open = client) {
+                        server.serve(new ChannelInput(open), new ChannelOutput(open), "sock-" + id, "mcp-writer-" + id);
+                    } catch (IOException e) {
+                        Log.warn("❌ Error en la sesión sock-" + id + ": " + e.getMessage());
+                    } finally {
+                        slots.release();
+                        Log.info("🔗 Sesión sock-" + id + " cerrada");
+                    }
+                }, "mcp-conn-" + id);
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+    }
+
+    /**
+     * Crea el directorio del socket con permisos 0700 antes del bind, así no hay un momento
+     * en que otro usuario pueda alcanzar el socket. Uno ya existente no se modifica: si otros
+     * usuarios pueden entrar (p.ej. un daemon.socket en /tmp) solo se advierte
+     */
+    private static void secureDirectory(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (Files.notExists(directory)) {
+            try {
+                Files.createDirectories(directory,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createDirectories(directory);
+            }
+        }
+        try {
+            boolean shared = !isOwnedByCurrentUser(directory);
+            for (PosixFilePermission permission : Files.getPosixFilePermissions(directory)) {
+                shared |= permission != PosixFilePermission.OWNER_READ && permission != PosixFilePermission.OWNER_WRITE
+                    && permission != PosixFilePermission.OWNER_EXECUTE;
+            }
+            if (shared) {
+                Log.warn("⚠️ " + directory + " es accesible para otros usuarios: conviene un daemon.socket"
+                    + " en un directorio 0700 propio");
+            }
+        } catch (UnsupportedOperationException e) {
+            // Sin permisos POSIX: queda con los del sistema de archivos
+        }
+    }
+
+    private static boolean isOwnedByCurrentUser(Path path) throws IOException {
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal current = path.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        return owner.equals(current);
+    }
+
+    private static boolean isListening(Path socket) {
+        try (SocketChannel probe = connect(socket)) {
+            return probe.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void reject(SocketChannel client, int maxConnections) {
+        Log.warn("⚠️ Conexión rechazada: límite de " + maxConnections + " sesiones alcanzado");
+        String error = "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32000,"
+            + "\"message\":\"Server busy: too many connections\"}}\n";
+        try (SocketChannel rejected = client) {
+            rejected.write(ByteBuffer.wrap(error.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // El cliente ya se fue
+        }
+    }
+
+    /**
+     * Shim para el IDE: copia stdin al daemon y sus respuestas a stdout. Devuelve false
+     * si no hay daemon escuchando, para que el llamador atienda la sesión en este proceso
+     */
+    static boolean relay(Path socket) throws IOException {
+        long started = System.nanoTime();
+        SocketChannel daemon;
+        try {
+            // Un socket de otro usuario podría ser un impostor que recibiría el tráfico del IDE
+            if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS) && !isOwnedByCurrentUser(socket)) {
+                Log.warn("⚠️ El socket " + socket + " no pertenece a " + System.getProperty("user.name")
+                    + ": se ignora");
+                return false;
+            }
+            daemon = connect(socket);
+        } catch (IOException e) {
+            Log.warn("⚠️ Sin daemon en " + socket + " (" + e.getMessage() + ")");
+            return false;
+        }
+        long connectedNanos = System.nanoTime() - started;
+
+        try (SocketChannel open = daemon) {
+            Thread upstream = new Thread(() -> {
+                try {
+                    copy(System.in, new ChannelOutput(open), null);
+                    open.shutdownOutput(); // El daemon responde lo pendiente y cierra
+                } catch (IOException e) {
+                    Log.warn("❌ Error enviando al daemon: " + e.getMessage());
+                }
+            }, "mcp-shim-in");
+            upstream.setDaemon(true);
+            upstream.start();
+
+            copy(new ChannelInput(open), System.out, () ->
+                Log.info("⚡ Daemon: connect " + connectedNanos / 1_000_000 + " ms, primera respuesta a los "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms"));
+        }
+        return true;
+    }
+
+    private static void copy(InputStream in, OutputStream out, Runnable onFirstData) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            if (onFirstData != null) {
+                onFirstData.run();
+                onFirstData = null;
+            }
+            out.write(buffer, 0, read);
+            // Mensajes por línea: el otro extremo espera cada uno completo, no el buffer lleno
+            out.flush();
+        }
+    }
+
+    private static SocketChannel connect(Path socket) throws IOException {
+        SocketChannel channel = open(SocketChannel.class);
+        try {
+            channel.connect(address(socket));
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * ServerSocketChannel.open(UNIX) / SocketChannel.open(UNIX), disponibles desde Java 16
+     */
+    private static <T> T open(Class<T> type) throws IOException {
+        ProtocolFamily unix;
+        try {
+            unix = StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("los sockets Unix requieren Java 16 o superior");
+        }
+        try {
+            return type.cast(type.getMethod("open", ProtocolFamily.class).invoke(null, unix));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("los sockets Unix requieren Java 16 o superior", e);
+        }
+    }
+
+    private static SocketAddress address(Path socket) throws IOException {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class).invoke(null, socket);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("los sockets Unix requieren Java 16 o superior", e);
+        }
+    }
+
+    /**
+     * Lectura directa del canal. Channels.newInputStream/newOutputStream serializan
+     * lecturas y escrituras sobre el mismo lock, y una lectura bloqueada detendría al
+     * hilo escritor de la sesión
+     */
+    private static final class ChannelInput extends InputStream {
+        private final SocketChannel channel;
+
+        ChannelInput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(buffer, offset, length));
+        }
+    }
+
+    private static final class ChannelOutput extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Cierra solo la escritura: el lector de la sesión puede seguir recibiendo
+            if (channel.isOpen()) {
+                channel.shutdownOutput();
+            }
+        }
+    }
+}